@@ -0,0 +1,134 @@
+/**
+ * Copyright 2017 The OpenTracing Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.opentracing.contrib.spanmanager.benchmarks;
+
+import io.opentracing.NoopSpan;
+import io.opentracing.Span;
+import io.opentracing.contrib.spanmanager.SpanManager;
+import io.opentracing.contrib.spanmanager.SpanManager.ManagedSpan;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Single-threaded benchmarks of the {@link SpanManager} hot path at increasing nesting depths.
+ * <p>
+ * The <code>depth</code> parameter is the nesting depth that is reached by the measured operation.
+ * Run with <code>-prof gc</code> to obtain the allocation rate per operation.
+ *
+ * @see SpanManagerConcurrentBenchmark
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SpanManagerBenchmark {
+
+    @Param({"1", "2", "4", "8", "16", "32", "64"})
+    int depth;
+
+    @Param({SpanManagers.DEFAULT, SpanManagers.POOLED})
+    String manager;
+
+    SpanManager spanManager;
+    Span span;
+    ManagedSpan[] frames;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        spanManager = SpanManagers.named(manager);
+        span = NoopSpan.INSTANCE;
+        frames = new ManagedSpan[depth];
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        spanManager.clear();
+    }
+
+    /**
+     * The <code>depth - 1</code> active parent frames below the measured frame.
+     */
+    @State(Scope.Thread)
+    public static class Parents {
+        @Setup(Level.Iteration)
+        public void activate(SpanManagerBenchmark benchmark) {
+            benchmark.spanManager.clear();
+            for (int i = 0; i < benchmark.depth - 1; i++) {
+                benchmark.frames[i] = benchmark.spanManager.activate(benchmark.span);
+            }
+        }
+
+        @TearDown(Level.Iteration)
+        public void clear(SpanManagerBenchmark benchmark) {
+            benchmark.spanManager.clear();
+        }
+    }
+
+    /**
+     * A single activate / deactivate pair on top of <code>depth - 1</code> active parents.
+     */
+    @Benchmark
+    public void activateDeactivate(Parents parents, Blackhole blackhole) {
+        ManagedSpan managedSpan = spanManager.activate(span);
+        blackhole.consume(managedSpan);
+        managedSpan.deactivate();
+    }
+
+    /**
+     * Looks up the current managed span on a stack of <code>depth - 1</code> active frames
+     * (depth 1 measures the lookup on an empty stack).
+     */
+    @Benchmark
+    public ManagedSpan current(Parents parents) {
+        return spanManager.current();
+    }
+
+    /**
+     * Activates <code>depth</code> nested frames and deactivates them again in reverse (strictly nested) order.
+     */
+    @Benchmark
+    public void nestedActivateDeactivate(Blackhole blackhole) {
+        for (int i = 0; i < depth; i++) frames[i] = spanManager.activate(span);
+        for (int i = depth - 1; i >= 0; i--) frames[i].deactivate();
+        blackhole.consume(frames);
+    }
+
+    /**
+     * Activates <code>depth</code> nested frames and deactivates them again in activation (out-of-order) order.
+     * <p>
+     * All but the last deactivation leave the current span alone,
+     * the last deactivation has to unwind all of the already-deactivated parents.
+     */
+    @Benchmark
+    public void nestedActivateDeactivateOutOfOrder(Blackhole blackhole) {
+        for (int i = 0; i < depth; i++) frames[i] = spanManager.activate(span);
+        for (int i = 0; i < depth; i++) frames[i].deactivate();
+        blackhole.consume(frames);
+    }
+
+    /**
+     * Activates <code>depth</code> nested frames and {@link SpanManager#clear() clears} them all at once.
+     */
+    @Benchmark
+    public void nestedActivateClear(Blackhole blackhole) {
+        for (int i = 0; i < depth; i++) frames[i] = spanManager.activate(span);
+        spanManager.clear();
+        blackhole.consume(frames);
+    }
+
+}
@@ -0,0 +1,26 @@
+/**
+ * Copyright 2017 The OpenTracing Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.opentracing.contrib.spanmanager.benchmarks;
+
+import org.openjdk.jmh.annotations.Threads;
+
+/**
+ * The {@link SpanManagerBenchmark} hot path, executed by several threads sharing one span manager.
+ * <p>
+ * Each thread maintains its own stack, so any difference with the single-threaded numbers
+ * is caused by shared state within the span manager (or the machine itself).
+ */
+@Threads(4)
+public class SpanManagerConcurrentBenchmark extends SpanManagerBenchmark {
+}
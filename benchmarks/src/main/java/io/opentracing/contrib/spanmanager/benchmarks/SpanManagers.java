@@ -0,0 +1,49 @@
+/**
+ * Copyright 2017 The OpenTracing Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.opentracing.contrib.spanmanager.benchmarks;
+
+import io.opentracing.contrib.spanmanager.DefaultSpanManager;
+import io.opentracing.contrib.spanmanager.PooledSpanManager;
+import io.opentracing.contrib.spanmanager.SpanManager;
+
+/**
+ * Resolves the {@link SpanManager} implementations to compare by their benchmark parameter name.
+ */
+final class SpanManagers {
+
+    /**
+     * The {@link DefaultSpanManager} singleton.
+     */
+    static final String DEFAULT = "default";
+
+    /**
+     * The {@link PooledSpanManager} singleton.
+     */
+    static final String POOLED = "pooled";
+
+    private SpanManagers() {
+        throw new UnsupportedOperationException();
+    }
+
+    /**
+     * @param name The name of the span manager (the <code>manager</code> benchmark parameter).
+     * @return The span manager to benchmark.
+     */
+    static SpanManager named(String name) {
+        if (DEFAULT.equals(name)) return DefaultSpanManager.getInstance();
+        if (POOLED.equals(name)) return PooledSpanManager.getInstance();
+        throw new IllegalArgumentException("Unknown span manager: \"" + name + "\".");
+    }
+
+}
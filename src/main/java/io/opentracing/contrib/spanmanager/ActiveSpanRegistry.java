@@ -0,0 +1,143 @@
+/**
+ * Copyright 2017 The OpenTracing Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.opentracing.contrib.spanmanager;
+
+import io.opentracing.contrib.spanmanager.SpanManager.ManagedSpan;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+
+/**
+ * Lock-free registry of the current managed span of every thread with active spans.
+ * <p>
+ * A thread acquires a {@link Slot} when it activates its first span and keeps it for the rest of its life,
+ * publishing <code>null</code> while it has no active spans.
+ * Slots are kept in linked lists, striped by thread id. The slots of terminated threads are left out of snapshots
+ * and are reclaimed by the next thread that acquires a slot in the same stripe instead of being removed,
+ * so the registry grows to the maximum number of threads that used it at the same time.
+ * <p>
+ * The owner thread publishes its current managed span into its slot with a single ordered store;
+ * other threads can {@link #snapshot()} all slots without blocking the owners.
+ */
+final class ActiveSpanRegistry {
+
+    private final AtomicReferenceArray<Slot> stripes;
+    private final int stripeMask;
+
+    ActiveSpanRegistry() {
+        this(Runtime.getRuntime().availableProcessors() * 2);
+    }
+
+    /**
+     * @param minStripes The minimum number of stripes, rounded up to a power of two.
+     */
+    ActiveSpanRegistry(int minStripes) {
+        int stripes = 1;
+        while (stripes < minStripes) stripes <<= 1;
+        this.stripes = new AtomicReferenceArray<Slot>(stripes);
+        this.stripeMask = stripes - 1;
+    }
+
+    /**
+     * Acquires a slot for the current thread, reclaiming the slot of a terminated thread in its stripe
+     * or adding a new slot to the stripe if there is none.
+     * <p>
+     * A thread only acquires a slot once, so walking the stripe does not affect later activations.
+     *
+     * @return The slot that is owned by the current thread for the rest of its life.
+     */
+    Slot acquire() {
+        Thread thread = Thread.currentThread();
+        long id = thread.getId();
+        int stripe = ((int) (id ^ (id >>> 32)) * 0x9E3779B9 >>> 16) & stripeMask;
+        for (Slot slot = stripes.get(stripe); slot != null; slot = slot.next) {
+            if (slot.reclaim(thread)) return slot;
+        }
+        Slot slot = new Slot(thread);
+        do {
+            slot.next = stripes.get(stripe);
+        } while (!stripes.compareAndSet(stripe, slot.next, slot));
+        return slot;
+    }
+
+    /**
+     * Weakly consistent snapshot of the published managed spans.
+     * <p>
+     * Every slot is read without synchronizing with its owner, so the snapshot may miss
+     * or include spans that were activated or deactivated while it was taken.
+     *
+     * @return The published managed span per live thread.
+     */
+    Map<Thread, ManagedSpan> snapshot() {
+        Map<Thread, ManagedSpan> snapshot = new LinkedHashMap<Thread, ManagedSpan>();
+        for (int i = 0; i < stripes.length(); i++) {
+            for (Slot slot = stripes.get(i); slot != null; slot = slot.next) {
+                ManagedSpan current = slot.current;
+                Thread thread = slot.thread;
+                if (current != null && thread.isAlive()) snapshot.put(thread, current);
+            }
+        }
+        return snapshot;
+    }
+
+    /**
+     * Registry entry holding the current managed span of its owner thread.
+     */
+    static final class Slot {
+        private static final AtomicReferenceFieldUpdater<Slot, Thread> OWNER =
+                AtomicReferenceFieldUpdater.newUpdater(Slot.class, Thread.class, "thread");
+        private static final AtomicReferenceFieldUpdater<Slot, ManagedSpan> CURRENT =
+                AtomicReferenceFieldUpdater.newUpdater(Slot.class, ManagedSpan.class, "current");
+
+        private volatile Thread thread;
+        private volatile ManagedSpan current;
+        private Slot next; // Written once, before the slot is published in its stripe.
+
+        private Slot(Thread owner) {
+            this.thread = owner;
+        }
+
+        /**
+         * Takes over this slot if its owner thread terminated; only one thread can replace the terminated owner.
+         */
+        private boolean reclaim(Thread owner) {
+            Thread terminated = thread;
+            if (terminated.isAlive() || !OWNER.compareAndSet(this, terminated, owner)) {
+                return false;
+            }
+            CURRENT.lazySet(this, null);
+            return true;
+        }
+
+        /**
+         * @return The managed span that was last published by the owner thread.
+         */
+        ManagedSpan current() {
+            return current;
+        }
+
+        /**
+         * Publishes the current managed span of the owner thread; only the owner may call this method.
+         *
+         * @param managedSpan The new current managed span, or <code>null</code> if the owner has no active spans.
+         */
+        void publish(ManagedSpan managedSpan) {
+            CURRENT.lazySet(this, managedSpan);
+        }
+
+    }
+
+}
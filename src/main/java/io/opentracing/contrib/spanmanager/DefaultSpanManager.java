@@ -15,8 +15,12 @@ package io.opentracing.contrib.spanmanager;
 
 import io.opentracing.NoopSpan;
 import io.opentracing.Span;
+import io.opentracing.SpanContext;
 
-import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -31,16 +35,57 @@ import java.util.logging.Logger;
  * <li>If no managed parents remain, the <em>managed span</em> is cleared.</li>
  * <li>Consecutive <code>deactivate()</code> calls for already-deactivated spans will be ignored.</li>
  * </ol>
+ * <p>
+ * Deactivated spans are unlinked from the stack once, when they are deactivated,
+ * so looking up the current span never has to walk the stack, regardless of its depth or deactivation order.
+ * Only spans that are deactivated from <em>another</em> thread are left on the stack of their thread
+ * to be unwound lazily, the next time that thread activates, deactivates or looks up a span.
+ * Unlinked spans release their stack references, so neither they nor their parents
+ * keep deactivated spans reachable.
+ * <p>
+ * Threads that extend {@link SpanAwareThread} hold their current span in a field instead of the {@link ThreadLocal},
+ * which saves the thread-local map lookup on every call.
+ * <p>
+ * The {@link #getInstance() default instance} does not limit the depth of the stack.
+ * Span managers created {@link #withMaxDepth(int, DepthLimitPolicy) with a maximum depth}
+ * remove the oldest spans from the stack of a thread according to their {@link DepthLimitPolicy}
+ * once an activation would exceed the maximum, so e.g. recursive schedulers keep constant memory per thread.
+ * <p>
+ * Span managers {@link Builder#withLeakDetection(int) with leak detection} report sampled managed spans
+ * that are discarded without being deactivated, including the stack trace of their activation.
+ * A managed span is discarded when it is {@link #clear() cleared} (e.g. when its thread is returned to a pool),
+ * removed by the maximum depth or garbage collected.
+ * <p>
+ * Activations and deactivations are not logged by default;
+ * configure a {@link Builder#withListener(SpanManagerListener) listener} such as the
+ * {@link LoggingSpanManagerListener} to log them.
+ * <p>
+ * Span managers {@link Builder#withActiveSpanRegistry() with the active span registry}
+ * can {@link #getActiveSpans() list the current span of every thread} without stopping those threads.
  */
 public final class DefaultSpanManager implements SpanManager {
 
     private static final Logger LOGGER = Logger.getLogger(DefaultSpanManager.class.getName());
-    private static final DefaultSpanManager INSTANCE = new DefaultSpanManager();
-    private static final ManagedSpan NO_MANAGED_SPAN = new NoManagedSpan();
+    private static final DefaultSpanManager INSTANCE = builder().build();
 
     private final ThreadLocal<LinkedManagedSpan> managed = new ThreadLocal<LinkedManagedSpan>();
+    private final int maxDepth;
+    private final DepthLimitPolicy depthLimitPolicy;
+    private final AtomicLong depthLimitHits = new AtomicLong();
+    private final LeakDetector leakDetector;
+    private final SpanManagerMetrics metrics;
+    private final SpanManagerListener listener;
+    private final ActiveSpanRegistry registry;
+    private final ThreadLocal<ActiveSpanRegistry.Slot> slots;
 
-    private DefaultSpanManager() {
+    private DefaultSpanManager(Builder builder) {
+        this.maxDepth = builder.maxDepth;
+        this.depthLimitPolicy = builder.depthLimitPolicy;
+        this.leakDetector = builder.leakSamplingInterval > 0 ? new LeakDetector(builder.leakSamplingInterval) : null;
+        this.metrics = builder.metrics;
+        this.listener = builder.listener;
+        this.registry = builder.registry ? new ActiveSpanRegistry() : null;
+        this.slots = builder.registry ? new ThreadLocal<ActiveSpanRegistry.Slot>() : null;
     }
 
     /**
@@ -50,6 +95,221 @@ public final class DefaultSpanManager implements SpanManager {
         return INSTANCE;
     }
 
+    /**
+     * @return A builder for a new, configured, span manager.
+     */
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * Creates a new span manager that limits the number of active spans on the stack of each thread.
+     *
+     * @param maxDepth         The maximum number of active spans per thread (at least 1).
+     * @param depthLimitPolicy The policy how to remove spans from the stack when the maximum depth is exceeded.
+     * @return The new span manager with the specified maximum depth.
+     * @see Builder#withMaxDepth(int, DepthLimitPolicy)
+     */
+    public static DefaultSpanManager withMaxDepth(int maxDepth, DepthLimitPolicy depthLimitPolicy) {
+        return builder().withMaxDepth(maxDepth, depthLimitPolicy).build();
+    }
+
+    /**
+     * @return The number of activations that exceeded the maximum depth of this span manager.
+     */
+    public long getDepthLimitHits() {
+        return depthLimitHits.get();
+    }
+
+    /**
+     * @return The number of managed spans that were reported as leaked (<code>0</code> without leak detection).
+     */
+    public long getDetectedLeaks() {
+        return leakDetector != null ? leakDetector.getLeaks() : 0L;
+    }
+
+    /**
+     * Snapshot of the current span of every thread, for diagnostics such as dumps of stuck requests.
+     * <p>
+     * The snapshot is taken without blocking the threads and is therefore weakly consistent:
+     * spans that are activated or deactivated while it is taken may be missing or included.
+     * A thread whose current span was deactivated by another thread is omitted
+     * until it unwinds its stack.
+     * Threads that terminated with active spans are omitted as well.
+     *
+     * @return The current span per thread (empty without the {@link Builder#withActiveSpanRegistry() registry}).
+     */
+    public Map<Thread, Span> getActiveSpans() {
+        if (registry == null) return Collections.emptyMap();
+        Map<Thread, Span> activeSpans = new LinkedHashMap<Thread, Span>();
+        for (Map.Entry<Thread, ManagedSpan> entry : registry.snapshot().entrySet()) {
+            LinkedManagedSpan current = (LinkedManagedSpan) entry.getValue();
+            if (!current.isDeactivated()) activeSpans.put(entry.getKey(), current.getSpan());
+        }
+        return Collections.unmodifiableMap(activeSpans);
+    }
+
+    /**
+     * Builder for configured {@link DefaultSpanManager} instances.
+     */
+    public static final class Builder {
+        private int maxDepth = Integer.MAX_VALUE;
+        private DepthLimitPolicy depthLimitPolicy = null;
+        private int leakSamplingInterval = 0;
+        private SpanManagerMetrics metrics = null;
+        private SpanManagerListener listener = null;
+        private boolean registry = false;
+
+        private Builder() {
+        }
+
+        /**
+         * Limits the number of active spans on the stack of each thread.
+         *
+         * @param maxDepth         The maximum number of active spans per thread (at least 1).
+         * @param depthLimitPolicy The policy how to remove spans from the stack when the maximum depth is exceeded.
+         * @return This builder.
+         */
+        public Builder withMaxDepth(int maxDepth, DepthLimitPolicy depthLimitPolicy) {
+            if (maxDepth < 1) throw new IllegalArgumentException("Maximum depth must be at least 1: " + maxDepth + ".");
+            if (depthLimitPolicy == null) throw new NullPointerException("Depth limit policy is <null>.");
+            this.maxDepth = maxDepth;
+            this.depthLimitPolicy = depthLimitPolicy;
+            return this;
+        }
+
+        /**
+         * Tracks one in every <code>samplingInterval</code> activations,
+         * reporting the tracked managed spans that are discarded without being deactivated.
+         * <p>
+         * Tracking captures the stack trace of the activation.
+         * A sampling interval in the order of hundreds keeps the overhead low enough for production use.
+         *
+         * @param samplingInterval The number of activations per tracked activation (at least 1).
+         * @return This builder.
+         */
+        public Builder withLeakDetection(int samplingInterval) {
+            if (samplingInterval < 1) {
+                throw new IllegalArgumentException("Sampling interval must be at least 1: " + samplingInterval + ".");
+            }
+            this.leakSamplingInterval = samplingInterval;
+            return this;
+        }
+
+        /**
+         * Records the activations and deactivations of the span manager in the specified metrics.
+         *
+         * @param metrics The metrics to record into.
+         * @return This builder.
+         */
+        public Builder withMetrics(SpanManagerMetrics metrics) {
+            if (metrics == null) throw new NullPointerException("Metrics are <null>.");
+            this.metrics = metrics;
+            return this;
+        }
+
+        /**
+         * Notifies the specified listener of activations and deactivations,
+         * e.g. the {@link LoggingSpanManagerListener} to log them.
+         * <p>
+         * Without a listener, the span manager does not produce any diagnostics for activations and deactivations.
+         *
+         * @param listener The listener to notify.
+         * @return This builder.
+         */
+        public Builder withListener(SpanManagerListener listener) {
+            if (listener == null) throw new NullPointerException("Listener is <null>.");
+            this.listener = listener;
+            return this;
+        }
+
+        /**
+         * Publishes the current span of every thread in a lock-free registry,
+         * so {@link DefaultSpanManager#getActiveSpans()} can inspect the spans of all threads.
+         * <p>
+         * A thread acquires a registry slot when it activates its first span and keeps it for the rest of its life;
+         * every other change of its current span costs a single ordered store.
+         * With the registry, {@link SpanAwareThread span-aware threads} use the thread-local storage as well.
+         *
+         * @return This builder.
+         */
+        public Builder withActiveSpanRegistry() {
+            this.registry = true;
+            return this;
+        }
+
+        /**
+         * @return The new span manager.
+         */
+        public DefaultSpanManager build() {
+            return new DefaultSpanManager(this);
+        }
+    }
+
+    /**
+     * Policy how to remove spans from the stack of a thread when an activation exceeds the maximum depth.
+     * <p>
+     * Removed spans are no longer restored as current span when the spans above them are deactivated.
+     * Deactivating a removed span has no further effect.
+     */
+    public enum DepthLimitPolicy {
+        /**
+         * Removes the oldest span from the stack, keeping exactly the maximum number of spans.
+         * <p>
+         * Every activation at the maximum depth walks the stack to find its oldest span.
+         */
+        DROP_OLDEST,
+
+        /**
+         * Keeps the oldest (root) span and the newest spans of the stack,
+         * removing all spans in between until half the maximum depth remains.
+         * <p>
+         * The stack is walked once per <code>maxDepth / 2</code> activations.
+         */
+        COLLAPSE
+    }
+
+    /**
+     * @return The top of the stack of the current thread (which may have been deactivated by another thread).
+     */
+    private LinkedManagedSpan getManaged() {
+        if (registry != null) {
+            ActiveSpanRegistry.Slot slot = slots.get();
+            return slot != null ? (LinkedManagedSpan) slot.current() : null;
+        }
+        Thread thread = Thread.currentThread();
+        if (thread instanceof SpanAwareThread && ((SpanAwareThread) thread).spanManager == this) {
+            return ((SpanAwareThread) thread).managedSpan;
+        }
+        return managed.get();
+    }
+
+    /**
+     * @param top The new top of the stack of the current thread, or <code>null</code> to clear the stack.
+     */
+    private void setManaged(LinkedManagedSpan top) {
+        if (registry != null) {
+            ActiveSpanRegistry.Slot slot = slots.get();
+            if (slot == null) {
+                if (top == null) return;
+                slots.set(slot = registry.acquire()); // Kept for the life of the thread.
+            }
+            slot.publish(top);
+            return;
+        }
+        Thread thread = Thread.currentThread();
+        if (thread instanceof SpanAwareThread) {
+            SpanAwareThread spanAwareThread = (SpanAwareThread) thread;
+            if (spanAwareThread.spanManager == null) spanAwareThread.spanManager = this; // Claim the thread field.
+            if (spanAwareThread.spanManager == this) {
+                spanAwareThread.managedSpan = top;
+                return;
+            }
+        }
+        if (top == null) managed.remove();
+        else managed.set(top);
+    }
+
     /**
      * Stack unwinding algorithm that refreshes the currently managed span.
      * <p>
@@ -58,34 +318,165 @@ public final class DefaultSpanManager implements SpanManager {
      * @return The current non-deactivated LinkedManagedSpan or <code>null</code> if none remained.
      */
     private LinkedManagedSpan refreshCurrent() {
-        LinkedManagedSpan managedSpan = managed.get();
-        LinkedManagedSpan current = managedSpan;
-        while (current != null && current.deactivated.get()) { // Unwind stack if necessary.
+        LinkedManagedSpan current = getManaged();
+        if (current == null || !current.isDeactivated()) return current;
+        return unwind(current);
+    }
+
+    /**
+     * Unwinds spans that were deactivated from other threads from the top of the stack.
+     *
+     * @param current The current, deactivated, LinkedManagedSpan of this thread.
+     * @return The first non-deactivated parent or <code>null</code> if none remained.
+     */
+    private LinkedManagedSpan unwind(LinkedManagedSpan current) {
+        int unwound = 0;
+        do {
+            LinkedManagedSpan deactivated = current;
             current = current.parent;
+            deactivated.detach();
+            unwound++;
+        } while (current != null && current.isDeactivated());
+        if (metrics != null) metrics.unwound(unwound);
+        if (current != null) current.child = null;
+        setManaged(current);
+        return current;
+    }
+
+    /**
+     * Makes room for a new span on top of the specified parent if the stack reached the maximum depth.
+     * <p>
+     * The depth of a span is an upper bound, because spans below it may have been unlinked after it was activated.
+     * The actual depth is counted (and corrected) only when the upper bound reaches the maximum.
+     *
+     * @param parent The current span of this thread, that will become the parent of the new span.
+     * @return The parent for the new span (<code>null</code> if all spans were removed).
+     */
+    private LinkedManagedSpan limitDepth(LinkedManagedSpan parent) {
+        if (parent == null || parent.depth < maxDepth) return parent;
+        int depth = 1;
+        LinkedManagedSpan root = parent;
+        for (; root.parent != null; root = root.parent) depth++;
+        if (depth >= maxDepth) {
+            depthLimitHits.incrementAndGet();
+            if (LOGGER.isLoggable(Level.FINER)) {
+                LOGGER.log(Level.FINER, "Maximum depth {0} reached by {1}, applying {2}.",
+                        new Object[]{maxDepth, parent, depthLimitPolicy});
+            }
+            LinkedManagedSpan below;
+            if (depthLimitPolicy == DepthLimitPolicy.COLLAPSE && maxDepth > 1) {
+                // Keep the root and the newest (maxDepth / 2 - 1) spans.
+                LinkedManagedSpan newest = parent;
+                for (int i = 1; i < maxDepth / 2; i++) newest = newest.parent;
+                below = remove(root.child, newest);
+            } else { // Keep the newest (maxDepth - 1) spans.
+                LinkedManagedSpan newest = root;
+                for (int i = maxDepth; i < depth; i++) newest = newest.child;
+                below = remove(root, newest);
+            }
+            if (parent.isRemoved()) parent = below;
+            if (parent == null) return null;
+            for (root = parent; root.parent != null; ) root = root.parent;
         }
-        if (current != managedSpan) { // refresh current if necessary.
-            if (current == null) managed.remove();
-            else managed.set(current);
+        int renumbered = 0;
+        for (LinkedManagedSpan frame = root; frame != null; frame = frame.child) frame.depth = ++renumbered;
+        return parent;
+    }
+
+    /**
+     * Removes a contiguous range of spans from the stack of this thread.
+     *
+     * @param oldest The oldest span to remove.
+     * @param newest The newest span to remove (equal to, or above the oldest span).
+     * @return The span below the removed range, or <code>null</code> if the range included the root.
+     */
+    private LinkedManagedSpan remove(LinkedManagedSpan oldest, LinkedManagedSpan newest) {
+        LinkedManagedSpan below = oldest.parent, above = newest.child;
+        if (below != null) below.child = above;
+        if (above != null) above.parent = below;
+        else setManaged(below);
+        for (LinkedManagedSpan frame = oldest, next; frame != above; frame = next) {
+            next = frame.child;
+            frame.discard("it was removed by the maximum depth");
         }
-        return current;
+        return below;
     }
 
     @Override
     public ManagedSpan activate(Span span) {
-        LinkedManagedSpan managedSpan = new LinkedManagedSpan(span, refreshCurrent());
-        managed.set(managedSpan);
+        LinkedManagedSpan parent = limitDepth(refreshCurrent());
+        return push(leakDetector != null && leakDetector.sample()
+                ? new TrackedManagedSpan(span, parent) : new LinkedManagedSpan(span, parent));
+    }
+
+    /**
+     * {@link #activate(Span) Activates} the span, returning a single object that is both its managed span
+     * and a {@link Span} that {@link ManagedSpan#deactivate() deactivates} itself when it is finished or closed.
+     * <p>
+     * All other span methods are forwarded to the activated span.
+     * This saves a separate wrapper around the managed span, e.g. in the
+     * {@link io.opentracing.contrib.spanmanager.tracer.ManagedSpanTracer ManagedSpanTracer}.
+     * <p>
+     * <em>Note:</em> The returned object is also the {@link #current() current} managed span,
+     * so {@link ManagedSpan#close() closing} it as a managed span finishes the activated span as well.
+     * The activated span is finished only once, no matter how often the returned object is finished or closed;
+     * {@link ManagedSpan#deactivate() deactivate} it to release it without finishing the span.
+     *
+     * @param span The span to activate.
+     * @return The activated span, implementing {@link ManagedSpan} as well.
+     */
+    public Span activateAutoReleasing(Span span) {
+        return activateAutoReleasing(span, true);
+    }
+
+    /**
+     * {@link #activateAutoReleasing(Span) Activates} the span, discarding its tags, logs and operation name
+     * if it is not sampled.
+     * <p>
+     * Unsampled spans are still activated, so spans started within them can reference their context.
+     *
+     * @param span    The span to activate.
+     * @param sampled Whether the span is sampled by its tracer.
+     * @return The activated span, implementing {@link ManagedSpan} as well.
+     */
+    public Span activateAutoReleasing(Span span, boolean sampled) {
+        LinkedManagedSpan parent = limitDepth(refreshCurrent());
+        boolean tracked = leakDetector != null && leakDetector.sample();
+        AutoReleasingSpan managedSpan = sampled
+                ? new AutoReleasingSpan(span, parent, tracked) : new UnsampledSpan(span, parent, tracked);
+        push(managedSpan);
+        return managedSpan;
+    }
+
+    /**
+     * Pushes a new managed span on top of its parent and makes it the current span of this thread.
+     *
+     * @param managedSpan The new managed span.
+     * @return The managed span.
+     */
+    private LinkedManagedSpan push(LinkedManagedSpan managedSpan) {
+        LinkedManagedSpan parent = managedSpan.parent;
+        if (parent != null) parent.child = managedSpan;
+        setManaged(managedSpan);
+        if (metrics != null) metrics.activated(managedSpan.depth);
+        if (listener != null) listener.activated(managedSpan);
         return managedSpan;
     }
 
     @Override
     public ManagedSpan current() {
         LinkedManagedSpan current = refreshCurrent();
-        return current != null ? current : NO_MANAGED_SPAN;
+        return current != null ? current : NoManagedSpan.INSTANCE;
     }
 
     @Override
     public void clear() {
-        managed.remove();
+        if (leakDetector != null) {
+            for (LinkedManagedSpan frame = getManaged(); frame != null; frame = frame.parent) {
+                frame.discard(null);
+            }
+        }
+        setManaged(null);
     }
 
     @Override
@@ -109,14 +500,80 @@ public final class DefaultSpanManager implements SpanManager {
         return getClass().getSimpleName();
     }
 
-    private final class LinkedManagedSpan implements ManagedSpan {
-        private final LinkedManagedSpan parent;
+    class LinkedManagedSpan extends ManagedSpanFrame implements ManagedSpan {
         private final Span span;
-        private final AtomicBoolean deactivated = new AtomicBoolean(false);
+
+        // The owner and stack links are only modified by the owner thread.
+        // They are cleared once the span is removed from the stack,
+        // so a retained managed span does not keep its (possibly virtual) thread or any other spans reachable.
+        private Thread owner = Thread.currentThread();
+        private LinkedManagedSpan parent;
+        private LinkedManagedSpan child;
+        private int depth; // Upper bound of the number of spans in the stack up to and including this span.
 
         private LinkedManagedSpan(Span span, LinkedManagedSpan parent) {
+            super(0);
             this.parent = parent;
             this.span = span;
+            this.depth = parent != null ? parent.depth + 1 : 1;
+        }
+
+        /**
+         * Removes this deactivated span from the stack of the owner thread, linking its child to its parent.
+         * <p>
+         * Parents that were deactivated by other threads in the meantime are removed as well,
+         * so no deactivated span is kept reachable below the remaining spans.
+         * <p>
+         * Only the owner thread may call this method.
+         */
+        private void unlink() {
+            LinkedManagedSpan parent = this.parent;
+            while (parent != null && parent.isDeactivated()) {
+                LinkedManagedSpan deactivated = parent;
+                parent = parent.parent;
+                deactivated.detach();
+            }
+            if (child != null) { // Out-of-order deactivation; the current span is left alone.
+                if (metrics != null) metrics.deactivatedOutOfOrder();
+                child.parent = parent;
+                if (parent != null) parent.child = child;
+                refreshCurrent(); // Unless it was deactivated by another thread.
+            } else if (getManaged() == this) { // This is the current span; its parent becomes current.
+                if (parent != null) parent.child = null;
+                setManaged(parent);
+            } // else: the span was already removed from the stack by clear().
+            detach();
+        }
+
+        /**
+         * @return Whether this span was removed from the stack of its owner thread.
+         */
+        private boolean isRemoved() {
+            return owner == null;
+        }
+
+        /**
+         * Clears the references of this span after it was removed from the stack.
+         */
+        private void detach() {
+            owner = null;
+            parent = child = null;
+        }
+
+        /**
+         * Called when this span is removed from the stack without being deactivated.
+         *
+         * @param reason Why this span was removed, or <code>null</code> if the stack was cleared
+         *               (without detaching its spans).
+         */
+        void discard(String reason) {
+            if (reason != null) detach();
+        }
+
+        /**
+         * Called once when this span is deactivated.
+         */
+        void deactivated() {
         }
 
         @Override
@@ -125,11 +582,15 @@ public final class DefaultSpanManager implements SpanManager {
         }
 
         public void deactivate() {
-            if (deactivated.compareAndSet(false, true)) {
-                LinkedManagedSpan current = refreshCurrent(); // Trigger stack-unwinding algorithm.
-                LOGGER.log(Level.FINER, "Released {0}, current span is {1}.", new Object[]{this, current});
+            if (setStateBit(DEACTIVATED)) {
+                deactivated();
+                if (owner == Thread.currentThread()) {
+                    unlink();
+                } // else: the owner thread unwinds this span from the top of its stack when needed.
+                if (listener != null) listener.deactivated(this, current());
             } else {
-                LOGGER.log(Level.FINEST, "No action needed, {0} was already deactivated.", this);
+                if (metrics != null) metrics.deactivatedRepeatedly();
+                if (listener != null) listener.deactivatedRepeatedly(this);
             }
         }
 
@@ -154,30 +615,224 @@ public final class DefaultSpanManager implements SpanManager {
     }
 
     /**
-     * Empty implementation signifying there is no managed span.
+     * Linked managed span that is tracked by the leak detector.
      */
-    private static final class NoManagedSpan implements ManagedSpan {
-        private NoManagedSpan() {
+    private final class TrackedManagedSpan extends LinkedManagedSpan {
+        private final LeakDetector.Record leakRecord;
+
+        private TrackedManagedSpan(Span span, LinkedManagedSpan parent) {
+            super(span, parent);
+            this.leakRecord = leakDetector.track(this, span);
         }
 
         @Override
-        public Span getSpan() {
-            return null;
+        void discard(String reason) {
+            if (!isDeactivated()) leakRecord.report(reason != null ? reason : "its stack was cleared");
+            super.discard(reason);
         }
 
         @Override
-        public void deactivate() {
-            // no-op
+        void deactivated() {
+            leakRecord.close();
+        }
+    }
+
+    /**
+     * Linked managed span that is the activated {@link Span} at the same time,
+     * deactivating itself when it is finished or closed.
+     * <p>
+     * The activated span is finished or closed only once, by whichever of these methods is called first.
+     */
+    private class AutoReleasingSpan extends LinkedManagedSpan implements Span {
+        /**
+         * State bit of an auto-releasing span that finished or closed its activated span.
+         */
+        static final int FINISHED = 2;
+
+        private final LeakDetector.Record leakRecord; // null unless sampled by the leak detector.
+
+        private AutoReleasingSpan(Span span, LinkedManagedSpan parent, boolean tracked) {
+            super(span, parent);
+            this.leakRecord = tracked ? leakDetector.track(this, span) : null;
+        }
+
+        @Override
+        void discard(String reason) {
+            if (leakRecord != null && !isDeactivated()) {
+                leakRecord.report(reason != null ? reason : "its stack was cleared");
+            }
+            super.discard(reason);
+        }
+
+        @Override
+        void deactivated() {
+            if (leakRecord != null) leakRecord.close();
+        }
+
+        @Override
+        public void finish() {
+            try {
+                if (setStateBit(FINISHED)) getSpan().finish();
+            } finally {
+                deactivate();
+            }
+        }
+
+        @Override
+        public void finish(long finishMicros) {
+            try {
+                if (setStateBit(FINISHED)) getSpan().finish(finishMicros);
+            } finally {
+                deactivate();
+            }
         }
 
         @Override
         public void close() {
-            // no-op
+            try {
+                if (setStateBit(FINISHED)) getSpan().close();
+            } finally {
+                deactivate();
+            }
         }
 
         @Override
-        public String toString() {
-            return getClass().getSimpleName();
+        public SpanContext context() {
+            return getSpan().context();
+        }
+
+        @Override
+        public Span setTag(String key, String value) {
+            getSpan().setTag(key, value);
+            return this;
+        }
+
+        @Override
+        public Span setTag(String key, boolean value) {
+            getSpan().setTag(key, value);
+            return this;
+        }
+
+        @Override
+        public Span setTag(String key, Number value) {
+            getSpan().setTag(key, value);
+            return this;
+        }
+
+        @Override
+        public Span log(Map<String, ?> fields) {
+            getSpan().log(fields);
+            return this;
+        }
+
+        @Override
+        public Span log(long timestampMicroseconds, Map<String, ?> fields) {
+            getSpan().log(timestampMicroseconds, fields);
+            return this;
+        }
+
+        @Override
+        public Span log(String event) {
+            getSpan().log(event);
+            return this;
+        }
+
+        @Override
+        public Span log(long timestampMicroseconds, String event) {
+            getSpan().log(timestampMicroseconds, event);
+            return this;
+        }
+
+        @Override
+        public Span setBaggageItem(String key, String value) {
+            getSpan().setBaggageItem(key, value);
+            return this;
+        }
+
+        @Override
+        public String getBaggageItem(String key) {
+            return getSpan().getBaggageItem(key);
+        }
+
+        @Override
+        public Span setOperationName(String operationName) {
+            getSpan().setOperationName(operationName);
+            return this;
+        }
+
+        @SuppressWarnings("deprecation") // We simply delegate this method as we're told.
+        @Override
+        public Span log(String eventName, Object payload) {
+            getSpan().log(eventName, payload);
+            return this;
+        }
+
+        @SuppressWarnings("deprecation") // We simply delegate this method as we're told.
+        @Override
+        public Span log(long timestampMicroseconds, String eventName, Object payload) {
+            getSpan().log(timestampMicroseconds, eventName, payload);
+            return this;
+        }
+    }
+
+    /**
+     * Auto-releasing span that discards the tags, logs and operation name of its unsampled span.
+     */
+    private final class UnsampledSpan extends AutoReleasingSpan {
+        private UnsampledSpan(Span span, LinkedManagedSpan parent, boolean tracked) {
+            super(span, parent, tracked);
+        }
+
+        @Override
+        public Span setTag(String key, String value) {
+            return this;
+        }
+
+        @Override
+        public Span setTag(String key, boolean value) {
+            return this;
+        }
+
+        @Override
+        public Span setTag(String key, Number value) {
+            return this;
+        }
+
+        @Override
+        public Span log(Map<String, ?> fields) {
+            return this;
+        }
+
+        @Override
+        public Span log(long timestampMicroseconds, Map<String, ?> fields) {
+            return this;
+        }
+
+        @Override
+        public Span log(String event) {
+            return this;
+        }
+
+        @Override
+        public Span log(long timestampMicroseconds, String event) {
+            return this;
+        }
+
+        @Override
+        public Span setOperationName(String operationName) {
+            return this;
+        }
+
+        @SuppressWarnings("deprecation")
+        @Override
+        public Span log(String eventName, Object payload) {
+            return this;
+        }
+
+        @SuppressWarnings("deprecation")
+        @Override
+        public Span log(long timestampMicroseconds, String eventName, Object payload) {
+            return this;
         }
     }
 }
@@ -0,0 +1,138 @@
+/**
+ * Copyright 2017 The OpenTracing Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.opentracing.contrib.spanmanager;
+
+import io.opentracing.Span;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+import java.util.logging.Logger;
+
+/**
+ * Sampling detector of managed spans that are never deactivated.
+ * <p>
+ * One in every <code>samplingInterval</code> activations of each thread is tracked with a {@link Record},
+ * which captures the stack trace of the activation.
+ * Every thread counts its own activations, so sampling does not write any memory shared between threads.
+ * A tracked managed span that is discarded without being deactivated is reported as a leak,
+ * including the stack trace where it was activated.
+ * Managed spans that are garbage collected without being deactivated are reported the next time a span is tracked.
+ */
+final class LeakDetector {
+    private static final Logger LOGGER = Logger.getLogger(LeakDetector.class.getName());
+
+    private final int samplingInterval;
+    private final ReferenceQueue<Object> collected = new ReferenceQueue<Object>();
+    private final Set<Record> records = Collections.newSetFromMap(new ConcurrentHashMap<Record, Boolean>());
+    private final AtomicLong leaks = new AtomicLong();
+    private final ThreadLocal<int[]> countdowns = new ThreadLocal<int[]>() {
+        @Override
+        protected int[] initialValue() {
+            return new int[]{samplingInterval};
+        }
+    };
+
+    LeakDetector(int samplingInterval) {
+        if (samplingInterval < 1) {
+            throw new IllegalArgumentException("Sampling interval must be at least 1: " + samplingInterval + ".");
+        }
+        this.samplingInterval = samplingInterval;
+    }
+
+    /**
+     * @return Whether the next activation of the current thread should be tracked.
+     */
+    boolean sample() {
+        int[] countdown = countdowns.get();
+        if (--countdown[0] > 0) return false;
+        countdown[0] = samplingInterval;
+        return true;
+    }
+
+    /**
+     * Starts tracking the specified managed span.
+     *
+     * @param managedSpan The managed span to track.
+     * @param span        The span that was activated.
+     * @return The record to {@link Record#close() close} once the managed span is deactivated.
+     */
+    Record track(Object managedSpan, Span span) {
+        reportCollected();
+        Record record = new Record(managedSpan, span, collected);
+        records.add(record);
+        return record;
+    }
+
+    /**
+     * @return The number of leaks that were reported.
+     */
+    long getLeaks() {
+        return leaks.get();
+    }
+
+    private void reportCollected() {
+        for (Record record = (Record) collected.poll(); record != null; record = (Record) collected.poll()) {
+            record.report("it was garbage collected");
+        }
+    }
+
+    /**
+     * Tracking record of a managed span, capturing the stack trace of its activation.
+     */
+    final class Record extends WeakReference<Object> {
+        private final Span span;
+        private final Throwable activation;
+
+        private Record(Object managedSpan, Span span, ReferenceQueue<Object> queue) {
+            super(managedSpan, queue);
+            this.span = span;
+            this.activation = new Throwable("Activation of " + span);
+        }
+
+        /**
+         * Stops tracking because the managed span was deactivated.
+         */
+        void close() {
+            clear();
+            records.remove(this);
+        }
+
+        /**
+         * Reports the tracked managed span as leaked, unless it was already reported or closed.
+         *
+         * @param reason Why the managed span can no longer be deactivated.
+         */
+        void report(String reason) {
+            clear();
+            if (records.remove(this)) {
+                leaks.incrementAndGet();
+                if (LOGGER.isLoggable(Level.WARNING)) {
+                    LogRecord logRecord = new LogRecord(Level.WARNING,
+                            "LEAK: Managed span {0} was not deactivated before {1}. It was activated at:");
+                    logRecord.setLoggerName(LOGGER.getName());
+                    logRecord.setParameters(new Object[]{span, reason});
+                    logRecord.setThrown(activation);
+                    LOGGER.log(logRecord);
+                }
+            }
+        }
+    }
+
+}
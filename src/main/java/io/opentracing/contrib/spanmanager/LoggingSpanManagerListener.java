@@ -0,0 +1,68 @@
+/**
+ * Copyright 2017 The OpenTracing Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.opentracing.contrib.spanmanager;
+
+import io.opentracing.contrib.spanmanager.SpanManager.ManagedSpan;
+
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * {@link SpanManagerListener} that logs the events of a span manager
+ * with <code>java.util.logging</code> at levels {@link Level#FINER FINER} and {@link Level#FINEST FINEST}.
+ * <p>
+ * Messages are only formatted when the corresponding level is enabled.
+ */
+public final class LoggingSpanManagerListener implements SpanManagerListener {
+
+    private static final Logger LOGGER = Logger.getLogger(LoggingSpanManagerListener.class.getName());
+    private static final LoggingSpanManagerListener INSTANCE = new LoggingSpanManagerListener();
+
+    private LoggingSpanManagerListener() {
+    }
+
+    /**
+     * @return The singleton instance of the logging listener.
+     */
+    public static SpanManagerListener getInstance() {
+        return INSTANCE;
+    }
+
+    @Override
+    public void activated(ManagedSpan managedSpan) {
+        if (LOGGER.isLoggable(Level.FINER)) {
+            LOGGER.log(Level.FINER, "Activated {0}.", managedSpan);
+        }
+    }
+
+    @Override
+    public void deactivated(ManagedSpan managedSpan, ManagedSpan current) {
+        if (LOGGER.isLoggable(Level.FINER)) {
+            LOGGER.log(Level.FINER, "Released {0}, current span is {1}.", new Object[]{managedSpan, current});
+        }
+    }
+
+    @Override
+    public void deactivatedRepeatedly(ManagedSpan managedSpan) {
+        if (LOGGER.isLoggable(Level.FINEST)) {
+            LOGGER.log(Level.FINEST, "No action needed, {0} was already deactivated.", managedSpan);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName();
+    }
+
+}
@@ -0,0 +1,78 @@
+/**
+ * Copyright 2017 The OpenTracing Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.opentracing.contrib.spanmanager;
+
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+
+/**
+ * Base class for the managed span frames of the span managers, holding their lifecycle state word.
+ * <p>
+ * The lowest state bit signifies a {@link #DEACTIVATED deactivated} frame;
+ * the meaning of the other bits is up to the span manager.
+ * <p>
+ * This implementation updates the state with an {@link AtomicIntegerFieldUpdater}.
+ * On Java 9 and newer, the multi-release jar provides an implementation using a <code>VarHandle</code> instead.
+ */
+abstract class ManagedSpanFrame {
+    private static final AtomicIntegerFieldUpdater<ManagedSpanFrame> STATE =
+            AtomicIntegerFieldUpdater.newUpdater(ManagedSpanFrame.class, "state");
+
+    /**
+     * State bit of a deactivated frame.
+     */
+    static final int DEACTIVATED = 1;
+
+    private volatile int state;
+
+    ManagedSpanFrame(int initialState) {
+        this.state = initialState;
+    }
+
+    final int state() {
+        return state;
+    }
+
+    final void setState(int newState) {
+        state = newState;
+    }
+
+    /**
+     * Atomically replaces the state of this frame if it is still the expected state.
+     *
+     * @param expected The expected current state.
+     * @param newState The new state.
+     * @return <code>true</code> if the state was replaced, <code>false</code> if it differed from the expected state.
+     */
+    final boolean compareAndSetState(int expected, int newState) {
+        return STATE.compareAndSet(this, expected, newState);
+    }
+
+    final boolean isDeactivated() {
+        return (state & DEACTIVATED) != 0;
+    }
+
+    /**
+     * Sets the specified bit in the state of this frame, retaining all other bits.
+     *
+     * @param bit The state bit to set.
+     * @return <code>true</code> if the bit was set by this call, <code>false</code> if it had been set already.
+     */
+    final boolean setStateBit(int bit) {
+        for (int current = state; (current & bit) == 0; current = state) {
+            if (STATE.compareAndSet(this, current, current | bit)) return true;
+        }
+        return false;
+    }
+
+}
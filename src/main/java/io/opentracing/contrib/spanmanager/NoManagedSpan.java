@@ -0,0 +1,46 @@
+/**
+ * Copyright 2017 The OpenTracing Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.opentracing.contrib.spanmanager;
+
+import io.opentracing.Span;
+
+/**
+ * Empty implementation signifying there is no managed span.
+ */
+final class NoManagedSpan implements SpanManager.ManagedSpan {
+    static final SpanManager.ManagedSpan INSTANCE = new NoManagedSpan();
+
+    private NoManagedSpan() {
+    }
+
+    @Override
+    public Span getSpan() {
+        return null;
+    }
+
+    @Override
+    public void deactivate() {
+        // no-op
+    }
+
+    @Override
+    public void close() {
+        // no-op
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName();
+    }
+}
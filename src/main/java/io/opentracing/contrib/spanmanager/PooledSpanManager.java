@@ -0,0 +1,227 @@
+/**
+ * Copyright 2017 The OpenTracing Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.opentracing.contrib.spanmanager;
+
+import io.opentracing.NoopSpan;
+import io.opentracing.Span;
+
+import java.util.Arrays;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * {@link SpanManager} implementation that recycles its stack frames, using {@link ThreadLocal} storage
+ * of an array-backed stack of <em>pooled frames</em>.
+ * <p>
+ * Deactivated frames are reused by later activations from the same thread,
+ * so the stack of a thread does not allocate any frames once it has grown to its maximum depth.
+ * Each activation merely returns a small {@link ManagedSpan} handle for its frame.
+ * <p>
+ * The stack unwinding algorithm is identical to that of the {@link DefaultSpanManager}:
+ * <ol>
+ * <li>If the deactivated span is not the <em>managed</em> span, the <em>current managed</em> span is left alone.</li>
+ * <li>Otherwise, the first parent that is <em>not yet deactivated</em> is set as the new managed span.</li>
+ * <li>If no managed parents remain, the <em>managed span</em> is cleared.</li>
+ * <li>Consecutive <code>deactivate()</code> calls for already-deactivated spans will be ignored.</li>
+ * </ol>
+ * <p>
+ * Every frame counts its activations in its state word and every handle remembers the activation it was created for.
+ * A handle only deactivates its frame while the frame is still in that activation,
+ * so repeated <code>deactivate()</code> calls are ignored even after the frame was reused, from any thread.
+ * {@link ManagedSpan#getSpan() getSpan()} returns <code>null</code> once the handle is deactivated.
+ * Frames discarded by {@link #clear()} are never reused.
+ */
+public final class PooledSpanManager implements SpanManager {
+
+    private static final Logger LOGGER = Logger.getLogger(PooledSpanManager.class.getName());
+    private static final PooledSpanManager INSTANCE = new PooledSpanManager();
+    private static final int INITIAL_CAPACITY = 8;
+
+    private final ThreadLocal<FrameStack> stacks = new ThreadLocal<FrameStack>() {
+        @Override
+        protected FrameStack initialValue() {
+            return new FrameStack();
+        }
+    };
+
+    private PooledSpanManager() {
+    }
+
+    /**
+     * @return The singleton instance of the pooled span manager.
+     */
+    public static SpanManager getInstance() {
+        return INSTANCE;
+    }
+
+    @Override
+    public ManagedSpan activate(Span span) {
+        return stacks.get().push(span);
+    }
+
+    @Override
+    public ManagedSpan current() {
+        PooledManagedSpan current = stacks.get().refreshCurrent();
+        return current != null ? current : NoManagedSpan.INSTANCE;
+    }
+
+    @Override
+    public void clear() {
+        stacks.get().clear();
+    }
+
+    @Override
+    @Deprecated
+    public Span currentSpan() {
+        ManagedSpan current = current();
+        return current.getSpan() != null ? current.getSpan() : NoopSpan.INSTANCE;
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName();
+    }
+
+    /**
+     * Array-backed stack of pooled frames, owned by a single thread.
+     * <p>
+     * Only the owning thread modifies the stack itself;
+     * other threads can merely deactivate frames, which are popped by the owner later on.
+     */
+    private static final class FrameStack {
+        private final Thread owner = Thread.currentThread();
+        private PooledFrame[] frames = new PooledFrame[INITIAL_CAPACITY];
+        private int size = 0;
+
+        private PooledManagedSpan push(Span span) {
+            refreshCurrent();
+            if (size == frames.length) frames = Arrays.copyOf(frames, size * 2);
+            PooledFrame frame = frames[size];
+            if (frame == null) frame = frames[size] = new PooledFrame(this);
+            frame.reuse(span);
+            size++;
+            return frame.handle;
+        }
+
+        /**
+         * Stack unwinding algorithm that pops all deactivated frames from the top of the stack.
+         * <p>
+         * See {@link PooledSpanManager class javadoc} for a full description.
+         *
+         * @return The handle of the current non-deactivated frame or <code>null</code> if none remained.
+         */
+        private PooledManagedSpan refreshCurrent() {
+            while (size > 0) {
+                PooledFrame top = frames[size - 1];
+                if (!top.isDeactivated()) return top.handle;
+                top.span = null; // Don't hold on to spans or handles from recycled frames.
+                top.handle = null;
+                size--;
+            }
+            return null;
+        }
+
+        /**
+         * Discards all frames from the stack; discarded frames will not be reused.
+         */
+        private void clear() {
+            for (int i = 0; i < size; i++) {
+                frames[i].discard();
+                frames[i] = null;
+            }
+            size = 0;
+        }
+    }
+
+    /**
+     * Pooled frame, reused for the activations at its position in the stack of its thread.
+     * <p>
+     * The state of a frame is twice its number of activations, plus the {@link #DEACTIVATED} bit.
+     */
+    private static final class PooledFrame extends ManagedSpanFrame {
+        private final FrameStack stack;
+        private Span span;
+        private PooledManagedSpan handle;
+
+        private PooledFrame(FrameStack stack) {
+            super(DEACTIVATED);
+            this.stack = stack;
+        }
+
+        /**
+         * Activates this (deactivated) frame for the specified span with a new handle.
+         *
+         * @param span The span to manage with this frame.
+         */
+        private void reuse(Span span) {
+            int activation = state() + 1; // Clears the DEACTIVATED bit, starting the next activation.
+            this.span = span;
+            this.handle = new PooledManagedSpan(this, activation);
+            setState(activation);
+        }
+
+        /**
+         * Marks this frame as deactivated without unwinding the stack.
+         */
+        private void discard() {
+            setStateBit(DEACTIVATED);
+            span = null;
+            handle = null;
+        }
+    }
+
+    /**
+     * Handle for a single activation of a pooled frame.
+     */
+    private static final class PooledManagedSpan implements ManagedSpan {
+        private final PooledFrame frame;
+        private final int activation;
+        private final Span span;
+
+        private PooledManagedSpan(PooledFrame frame, int activation) {
+            this.frame = frame;
+            this.activation = activation;
+            this.span = frame.span;
+        }
+
+        @Override
+        public Span getSpan() {
+            return frame.state() == activation ? span : null;
+        }
+
+        public void deactivate() {
+            if (frame.compareAndSetState(activation, activation | ManagedSpanFrame.DEACTIVATED)) {
+                if (LOGGER.isLoggable(Level.FINER)) {
+                    LOGGER.log(Level.FINER, "Releasing {0}.", this);
+                }
+                if (frame.stack.owner == Thread.currentThread()) {
+                    frame.stack.refreshCurrent(); // Trigger stack-unwinding algorithm.
+                } // else: the owning thread unwinds its stack upon its next activate() or current() call.
+            } else if (LOGGER.isLoggable(Level.FINEST)) {
+                LOGGER.log(Level.FINEST, "No action needed, {0} was already deactivated.", this);
+            }
+        }
+
+        @Override
+        public void close() {
+            deactivate();
+        }
+
+        @Override
+        public String toString() {
+            return getClass().getSimpleName() + '{' + span + '}';
+        }
+    }
+
+}
@@ -0,0 +1,55 @@
+/**
+ * Copyright 2017 The OpenTracing Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.opentracing.contrib.spanmanager;
+
+/**
+ * {@link Thread} that holds the current managed span of the {@link DefaultSpanManager} in a direct field.
+ * <p>
+ * For these threads, looking up or changing the current span is a plain field access
+ * instead of a {@link ThreadLocal} lookup.
+ * The field is claimed by the first {@linkplain DefaultSpanManager} activating a span in this thread;
+ * any other span manager falls back to its regular thread-local storage.
+ * <p>
+ * Threadpools can create these threads through the
+ * {@link io.opentracing.contrib.spanmanager.concurrent.SpanAwareThreadFactory SpanAwareThreadFactory}.
+ *
+ * @see DefaultSpanManager
+ */
+public class SpanAwareThread extends Thread {
+
+    // Only accessed by the DefaultSpanManager from this thread itself.
+    DefaultSpanManager spanManager;
+    DefaultSpanManager.LinkedManagedSpan managedSpan;
+
+    public SpanAwareThread() {
+        super();
+    }
+
+    public SpanAwareThread(Runnable target) {
+        super(target);
+    }
+
+    public SpanAwareThread(String name) {
+        super(name);
+    }
+
+    public SpanAwareThread(Runnable target, String name) {
+        super(target, name);
+    }
+
+    public SpanAwareThread(ThreadGroup group, Runnable target, String name) {
+        super(group, target, name);
+    }
+
+}
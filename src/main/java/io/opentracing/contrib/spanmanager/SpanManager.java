@@ -105,6 +105,10 @@ public interface SpanManager {
 
         /**
          * Alias for {@link #deactivate()} to allow easy use from try-with-resources.
+         * <p>
+         * Managed spans that are the activated {@link Span} at the same time, such as those of
+         * {@link DefaultSpanManager#activateAutoReleasing(Span)}, {@link Span#close() close} that span as well,
+         * which finishes it.
          */
         void close();
 
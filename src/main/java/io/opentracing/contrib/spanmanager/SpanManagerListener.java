@@ -0,0 +1,52 @@
+/**
+ * Copyright 2017 The OpenTracing Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.opentracing.contrib.spanmanager;
+
+import io.opentracing.contrib.spanmanager.SpanManager.ManagedSpan;
+
+/**
+ * Listener for diagnostic events of a span manager.
+ * <p>
+ * Listeners are called synchronously on the hot path of the span manager, from the thread that caused the event.
+ * Implementations should return quickly and check whether they are interested in an event
+ * before doing any work for it, such as formatting messages.
+ *
+ * @see LoggingSpanManagerListener
+ * @see DefaultSpanManager.Builder#withListener(SpanManagerListener)
+ */
+public interface SpanManagerListener {
+
+    /**
+     * Called after a span was activated.
+     *
+     * @param managedSpan The new current managed span.
+     */
+    void activated(ManagedSpan managedSpan);
+
+    /**
+     * Called after a managed span was deactivated.
+     *
+     * @param managedSpan The deactivated managed span.
+     * @param current     The current managed span of the calling thread after the deactivation.
+     */
+    void deactivated(ManagedSpan managedSpan, ManagedSpan current);
+
+    /**
+     * Called when a managed span that was already deactivated is deactivated again; this has no effect.
+     *
+     * @param managedSpan The managed span that was already deactivated.
+     */
+    void deactivatedRepeatedly(ManagedSpan managedSpan);
+
+}
@@ -0,0 +1,159 @@
+/**
+ * Copyright 2017 The OpenTracing Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.opentracing.contrib.spanmanager;
+
+/**
+ * Optional instrumentation of span managers and span-propagating executors.
+ * <p>
+ * Pass a metrics instance to a {@link DefaultSpanManager.Builder#withMetrics(SpanManagerMetrics) span manager}
+ * or a <code>SpanPropagatingExecutorService</code> to have it record its behaviour.
+ * Components without metrics record nothing, at the cost of a single <code>null</code> check.
+ * <p>
+ * All counters are cumulative and striped over multiple cache lines, so recording does not contend between threads.
+ * Rates, such as activations per second, are obtained by sampling the counters periodically.
+ * A single instance may be shared by multiple components to record their combined behaviour.
+ */
+public final class SpanManagerMetrics {
+    private static final int ACTIVATIONS = 0;
+    private static final int OUT_OF_ORDER_DEACTIVATIONS = 1;
+    private static final int REPEATED_DEACTIVATIONS = 2;
+    private static final int UNWINDS = 3;
+    private static final int UNWOUND_SPANS = 4;
+    private static final int TASKS_WITH_SPAN = 5;
+    private static final int TASKS_WITHOUT_SPAN = 6;
+    private static final int DEPTH_BUCKETS = 7;
+    private static final int DEPTH_BUCKET_COUNT = 8;
+
+    private final StripedCounters counters = new StripedCounters(DEPTH_BUCKETS + DEPTH_BUCKET_COUNT);
+
+    /**
+     * Records the activation of a span.
+     *
+     * @param depth The stack depth of the activated span (the root span has depth 1).
+     */
+    void activated(int depth) {
+        counters.increment(ACTIVATIONS);
+        int bucket = 32 - Integer.numberOfLeadingZeros(depth - 1);
+        counters.increment(DEPTH_BUCKETS + (bucket < DEPTH_BUCKET_COUNT ? bucket : DEPTH_BUCKET_COUNT - 1));
+    }
+
+    /**
+     * Records the deactivation of a span that was not the current span.
+     */
+    void deactivatedOutOfOrder() {
+        counters.increment(OUT_OF_ORDER_DEACTIVATIONS);
+    }
+
+    /**
+     * Records a deactivation of a span that was already deactivated.
+     */
+    void deactivatedRepeatedly() {
+        counters.increment(REPEATED_DEACTIVATIONS);
+    }
+
+    /**
+     * Records the unwinding of spans from the top of a stack that were deactivated by other threads.
+     *
+     * @param spans The number of unwound spans.
+     */
+    void unwound(int spans) {
+        counters.increment(UNWINDS);
+        counters.add(UNWOUND_SPANS, spans);
+    }
+
+    /**
+     * Records a task that is propagated into another thread.
+     * <p>
+     * Called by the span-propagating executors of the <code>concurrent</code> package.
+     *
+     * @param tasks    The number of tasks.
+     * @param withSpan Whether the tasks propagate a span, or are passed on without a span.
+     */
+    public void propagated(int tasks, boolean withSpan) {
+        counters.add(withSpan ? TASKS_WITH_SPAN : TASKS_WITHOUT_SPAN, tasks);
+    }
+
+    /**
+     * @return The number of activated spans.
+     */
+    public long getActivations() {
+        return counters.sum(ACTIVATIONS);
+    }
+
+    /**
+     * Histogram of the stack depths at which spans were activated.
+     * <p>
+     * The buckets contain the activations at depth 1, 2, 3-4, 5-8, 9-16, 17-32, 33-64 and deeper than 64.
+     * Depths are upper bounds: spans that were deactivated out of order may still be counted.
+     *
+     * @return The number of activations per depth bucket.
+     */
+    public long[] getDepthHistogram() {
+        long[] histogram = new long[DEPTH_BUCKET_COUNT];
+        for (int i = 0; i < DEPTH_BUCKET_COUNT; i++) histogram[i] = counters.sum(DEPTH_BUCKETS + i);
+        return histogram;
+    }
+
+    /**
+     * @return The number of deactivated spans that were not the current span of their thread.
+     */
+    public long getOutOfOrderDeactivations() {
+        return counters.sum(OUT_OF_ORDER_DEACTIVATIONS);
+    }
+
+    /**
+     * @return The number of deactivations of spans that were already deactivated.
+     */
+    public long getRepeatedDeactivations() {
+        return counters.sum(REPEATED_DEACTIVATIONS);
+    }
+
+    /**
+     * @return The number of times that spans deactivated by other threads were unwound from the top of a stack.
+     */
+    public long getUnwinds() {
+        return counters.sum(UNWINDS);
+    }
+
+    /**
+     * @return The total number of spans that were skipped by all {@link #getUnwinds() unwinds}.
+     */
+    public long getUnwoundSpans() {
+        return counters.sum(UNWOUND_SPANS);
+    }
+
+    /**
+     * @return The number of tasks that were propagated with a span.
+     */
+    public long getTasksWithSpan() {
+        return counters.sum(TASKS_WITH_SPAN);
+    }
+
+    /**
+     * @return The number of tasks that were passed on without a span.
+     */
+    public long getTasksWithoutSpan() {
+        return counters.sum(TASKS_WITHOUT_SPAN);
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + "{activations=" + getActivations()
+                + ", outOfOrderDeactivations=" + getOutOfOrderDeactivations()
+                + ", repeatedDeactivations=" + getRepeatedDeactivations()
+                + ", unwinds=" + getUnwinds() + ", unwoundSpans=" + getUnwoundSpans()
+                + ", tasksWithSpan=" + getTasksWithSpan() + ", tasksWithoutSpan=" + getTasksWithoutSpan() + '}';
+    }
+
+}
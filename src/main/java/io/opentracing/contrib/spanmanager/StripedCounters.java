@@ -0,0 +1,71 @@
+/**
+ * Copyright 2017 The OpenTracing Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.opentracing.contrib.spanmanager;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Fixed set of counters that are striped over multiple cache lines to avoid contention between threads,
+ * comparable to one <code>LongAdder</code> per counter (which is not available on Java 6).
+ * <p>
+ * Each thread updates the counters of a stripe selected by its thread id;
+ * the value of a counter is the sum over all stripes.
+ */
+final class StripedCounters {
+    private static final int LONGS_PER_CACHE_LINE = 8;
+
+    private final AtomicLongArray cells;
+    private final int stripeLength;
+    private final int stripeMask;
+
+    /**
+     * @param counters The number of counters.
+     */
+    StripedCounters(int counters) {
+        int stripes = 1;
+        while (stripes < Runtime.getRuntime().availableProcessors() * 2) stripes <<= 1;
+        // Pad each stripe to whole cache lines, with an extra line to separate it from its neighbour.
+        this.stripeLength = ((counters + LONGS_PER_CACHE_LINE - 1) / LONGS_PER_CACHE_LINE + 1) * LONGS_PER_CACHE_LINE;
+        this.stripeMask = stripes - 1;
+        this.cells = new AtomicLongArray(stripes * stripeLength);
+    }
+
+    /**
+     * @param counter The index of the counter to increment.
+     */
+    void increment(int counter) {
+        add(counter, 1L);
+    }
+
+    /**
+     * @param counter The index of the counter to add to.
+     * @param value   The value to add.
+     */
+    void add(int counter, long value) {
+        long id = Thread.currentThread().getId();
+        int stripe = ((int) (id ^ (id >>> 32)) * 0x9E3779B9 >>> 16) & stripeMask;
+        cells.getAndAdd(stripe * stripeLength + counter, value);
+    }
+
+    /**
+     * @param counter The index of the counter to sum.
+     * @return The sum of the counter over all stripes.
+     */
+    long sum(int counter) {
+        long sum = 0L;
+        for (int i = counter; i < cells.length(); i += stripeLength) sum += cells.get(i);
+        return sum;
+    }
+
+}
@@ -0,0 +1,101 @@
+/**
+ * Copyright 2017 The OpenTracing Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.opentracing.contrib.spanmanager.concurrent;
+
+import io.opentracing.Span;
+import io.opentracing.contrib.spanmanager.SpanManager;
+
+import java.util.AbstractCollection;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.concurrent.Callable;
+
+/**
+ * Read-only view of a batch of {@link Callable} tasks that will execute
+ * with an {@link SpanManager#activate(Span) managed active span} specified from the scheduling thread.
+ * <p>
+ * The tasks are not copied; each task is wrapped when it is iterated,
+ * and all wrappers share this view as their propagation context instead of holding their own copy of it.
+ *
+ * @see CallableWithManagedSpan
+ */
+final class CallablesWithManagedSpan<T> extends AbstractCollection<Callable<T>> {
+
+    private final Collection<? extends Callable<T>> delegate;
+    private final SpanManager spanManager;
+    private final Span spanToManage;
+
+    CallablesWithManagedSpan(Collection<? extends Callable<T>> callables, SpanManager spanManager, Span spanToManage) {
+        if (callables == null) throw new NullPointerException("Collection of tasks is <null>.");
+        if (spanManager == null) throw new NullPointerException("Span manager is <null>.");
+        this.delegate = callables;
+        this.spanManager = spanManager;
+        this.spanToManage = spanToManage;
+    }
+
+    @Override
+    public int size() {
+        return delegate.size();
+    }
+
+    @Override
+    public Iterator<Callable<T>> iterator() {
+        final Iterator<? extends Callable<T>> iterator = delegate.iterator();
+        return new Iterator<Callable<T>>() {
+            @Override
+            public boolean hasNext() {
+                return iterator.hasNext();
+            }
+
+            @Override
+            public Callable<T> next() {
+                return new Task(iterator.next());
+            }
+
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException("Tasks with managed span are read-only.");
+            }
+        };
+    }
+
+    /**
+     * Task of the batch, referring to the shared batch for its span.
+     */
+    private final class Task implements Callable<T> {
+        private final Callable<T> callable;
+
+        private Task(Callable<T> callable) {
+            if (callable == null) throw new NullPointerException("Callable is <null>.");
+            this.callable = callable;
+        }
+
+        /**
+         * Performs the delegate call with the managed span of the batch.
+         *
+         * @return The result from the original call.
+         * @throws Exception if the original call threw an exception.
+         */
+        @Override
+        public T call() throws Exception {
+            SpanManager.ManagedSpan managedSpan = spanManager.activate(spanToManage);
+            try {
+                return callable.call();
+            } finally {
+                managedSpan.deactivate();
+            }
+        }
+    }
+
+}
@@ -0,0 +1,65 @@
+/**
+ * Copyright 2017 The OpenTracing Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.opentracing.contrib.spanmanager.concurrent;
+
+import io.opentracing.contrib.spanmanager.DefaultSpanManager;
+import io.opentracing.contrib.spanmanager.SpanAwareThread;
+
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * {@link ThreadFactory} creating {@link SpanAwareThread span-aware threads}, that hold the current span
+ * of the {@link DefaultSpanManager} in a field instead of a {@link ThreadLocal}.
+ * <p>
+ * Apart from their type, the created threads are configured like the threads from
+ * {@link java.util.concurrent.Executors#defaultThreadFactory()}: non-daemon threads with normal priority,
+ * in the thread group of the thread that created the factory.
+ *
+ * @see SpanAwareThread
+ */
+public class SpanAwareThreadFactory implements ThreadFactory {
+    private static final AtomicInteger POOL_NUMBER = new AtomicInteger(1);
+
+    private final ThreadGroup group;
+    private final String namePrefix;
+    private final AtomicInteger threadNumber = new AtomicInteger(1);
+
+    /**
+     * Creates a factory for threads named <code>span-aware-pool-N-thread-M</code>.
+     */
+    public SpanAwareThreadFactory() {
+        this("span-aware-pool-" + POOL_NUMBER.getAndIncrement() + "-thread-");
+    }
+
+    /**
+     * Creates a factory for threads named with the specified prefix, followed by a sequence number.
+     *
+     * @param namePrefix The prefix for the names of the created threads.
+     */
+    public SpanAwareThreadFactory(String namePrefix) {
+        if (namePrefix == null) throw new NullPointerException("Thread name prefix is <null>.");
+        this.group = Thread.currentThread().getThreadGroup();
+        this.namePrefix = namePrefix;
+    }
+
+    @Override
+    public Thread newThread(Runnable runnable) {
+        Thread thread = new SpanAwareThread(group, runnable, namePrefix + threadNumber.getAndIncrement());
+        if (thread.isDaemon()) thread.setDaemon(false);
+        if (thread.getPriority() != Thread.NORM_PRIORITY) thread.setPriority(Thread.NORM_PRIORITY);
+        return thread;
+    }
+
+}
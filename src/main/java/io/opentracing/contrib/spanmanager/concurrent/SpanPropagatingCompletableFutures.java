@@ -0,0 +1,320 @@
+/**
+ * Copyright 2017 The OpenTracing Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.opentracing.contrib.spanmanager.concurrent;
+
+import io.opentracing.Span;
+import io.opentracing.contrib.spanmanager.SpanManager;
+import org.codehaus.mojo.animal_sniffer.IgnoreJRERequirement;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.function.BiConsumer;
+import java.util.function.BiFunction;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Factory for {@link CompletableFuture} stages that propagate the {@link SpanManager#current() current managed span}
+ * from the thread that creates a stage into the thread that completes it.
+ * <p>
+ * Wrap the function of each stage when building an asynchronous pipeline, for example:
+ * <pre><code>
+ * SpanPropagatingCompletableFutures futures = new SpanPropagatingCompletableFutures(spanManager);
+ * futures.supplyAsync(loadRequest, executor)
+ *         .thenApplyAsync(futures.function(parseRequest), executor)
+ *         .thenComposeAsync(futures.function(handleRequest), executor);
+ * </code></pre>
+ * The current span is captured once per stage, when its function is wrapped.
+ * When there is no current span at that time, the function is returned as-is without allocating a wrapper.
+ * A stage that completes on a thread that already has the captured span as its current span
+ * (e.g. when it completes inline on the thread that created it) does not activate the span again.
+ * <p>
+ * <em>Note:</em> The current span is merely propagated.
+ * It is explicitly <b>not</b> finished when the stages complete,
+ * nor will new spans be automatically related to the propagated span.
+ * Completable futures require Java 8 or newer.
+ */
+@IgnoreJRERequirement // Requires Java 8.
+public final class SpanPropagatingCompletableFutures {
+    private final SpanManager spanManager;
+
+    /**
+     * Creates a factory for stages that propagate the current span of the specified {@link SpanManager}.
+     *
+     * @param spanManager The manager to propagate spans with.
+     */
+    public SpanPropagatingCompletableFutures(SpanManager spanManager) {
+        if (spanManager == null) throw new NullPointerException("SpanManager is <null>.");
+        this.spanManager = spanManager;
+    }
+
+    /**
+     * @param supplier The supplier of the future value.
+     * @param executor The executor to supply the value with.
+     * @param <T>      The type of the future value.
+     * @return A new future that is asynchronously completed with the current span of the caller.
+     * @see CompletableFuture#supplyAsync(Supplier, Executor)
+     */
+    public <T> CompletableFuture<T> supplyAsync(Supplier<T> supplier, Executor executor) {
+        return CompletableFuture.supplyAsync(supplier(supplier), executor);
+    }
+
+    /**
+     * @param runnable The action to run.
+     * @param executor The executor to run the action with.
+     * @return A new future that is asynchronously completed with the current span of the caller.
+     * @see CompletableFuture#runAsync(Runnable, Executor)
+     */
+    public CompletableFuture<Void> runAsync(Runnable runnable, Executor executor) {
+        return CompletableFuture.runAsync(runnable(runnable), executor);
+    }
+
+    /**
+     * Wraps a function for stages like <code>thenApplyAsync</code>, <code>thenComposeAsync</code>
+     * or <code>exceptionally</code>.
+     *
+     * @param function The function to wrap.
+     * @param <T>      The type of the function argument.
+     * @param <R>      The type of the function result.
+     * @return The function that is applied with the current span of the caller,
+     * or the function itself if there is no current span.
+     */
+    public <T, R> Function<T, R> function(Function<T, R> function) {
+        if (function == null) throw new NullPointerException("Function is <null>.");
+        Span span = spanManager.current().getSpan();
+        return span == null ? function : new FunctionWithSpan<T, R>(function, spanManager, span);
+    }
+
+    /**
+     * Wraps a function for stages like <code>thenCombineAsync</code> or <code>handleAsync</code>.
+     *
+     * @param function The function to wrap.
+     * @param <T>      The type of the first function argument.
+     * @param <U>      The type of the second function argument.
+     * @param <R>      The type of the function result.
+     * @return The function that is applied with the current span of the caller,
+     * or the function itself if there is no current span.
+     */
+    public <T, U, R> BiFunction<T, U, R> biFunction(BiFunction<T, U, R> function) {
+        if (function == null) throw new NullPointerException("Function is <null>.");
+        Span span = spanManager.current().getSpan();
+        return span == null ? function : new BiFunctionWithSpan<T, U, R>(function, spanManager, span);
+    }
+
+    /**
+     * Wraps a consumer for stages like <code>thenAcceptAsync</code>.
+     *
+     * @param consumer The consumer to wrap.
+     * @param <T>      The type of the consumed value.
+     * @return The consumer that accepts values with the current span of the caller,
+     * or the consumer itself if there is no current span.
+     */
+    public <T> Consumer<T> consumer(Consumer<T> consumer) {
+        if (consumer == null) throw new NullPointerException("Consumer is <null>.");
+        Span span = spanManager.current().getSpan();
+        return span == null ? consumer : new ConsumerWithSpan<T>(consumer, spanManager, span);
+    }
+
+    /**
+     * Wraps a consumer for stages like <code>thenAcceptBothAsync</code> or <code>whenCompleteAsync</code>.
+     *
+     * @param consumer The consumer to wrap.
+     * @param <T>      The type of the first consumed value.
+     * @param <U>      The type of the second consumed value.
+     * @return The consumer that accepts values with the current span of the caller,
+     * or the consumer itself if there is no current span.
+     */
+    public <T, U> BiConsumer<T, U> biConsumer(BiConsumer<T, U> consumer) {
+        if (consumer == null) throw new NullPointerException("Consumer is <null>.");
+        Span span = spanManager.current().getSpan();
+        return span == null ? consumer : new BiConsumerWithSpan<T, U>(consumer, spanManager, span);
+    }
+
+    /**
+     * @param supplier The supplier to wrap.
+     * @param <T>      The type of the supplied value.
+     * @return The supplier that supplies its value with the current span of the caller,
+     * or the supplier itself if there is no current span.
+     */
+    public <T> Supplier<T> supplier(Supplier<T> supplier) {
+        if (supplier == null) throw new NullPointerException("Supplier is <null>.");
+        Span span = spanManager.current().getSpan();
+        return span == null ? supplier : new SupplierWithSpan<T>(supplier, spanManager, span);
+    }
+
+    /**
+     * Wraps an action for stages like <code>thenRunAsync</code>.
+     *
+     * @param runnable The action to wrap.
+     * @return The action that runs with the current span of the caller,
+     * or the action itself if there is no current span.
+     */
+    public Runnable runnable(Runnable runnable) {
+        if (runnable == null) throw new NullPointerException("Runnable is <null>.");
+        Span span = spanManager.current().getSpan();
+        return span == null ? runnable : new RunnableWithSpan(runnable, spanManager, span);
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + '{' + spanManager + '}';
+    }
+
+    /**
+     * Base class for stage functions that execute with a captured span.
+     */
+    private abstract static class StageWithSpan {
+        private final SpanManager spanManager;
+        private final Span span;
+
+        private StageWithSpan(SpanManager spanManager, Span span) {
+            this.spanManager = spanManager;
+            this.span = span;
+        }
+
+        /**
+         * @return The activated span that must be deactivated after the stage,
+         * or <code>null</code> if the captured span already is the current span.
+         */
+        final SpanManager.ManagedSpan activate() {
+            return spanManager.current().getSpan() == span ? null : spanManager.activate(span);
+        }
+
+        static void deactivate(SpanManager.ManagedSpan managedSpan) {
+            if (managedSpan != null) managedSpan.deactivate();
+        }
+    }
+
+    @IgnoreJRERequirement
+    private static final class FunctionWithSpan<T, R> extends StageWithSpan implements Function<T, R> {
+        private final Function<T, R> delegate;
+
+        private FunctionWithSpan(Function<T, R> delegate, SpanManager spanManager, Span span) {
+            super(spanManager, span);
+            this.delegate = delegate;
+        }
+
+        @Override
+        public R apply(T t) {
+            SpanManager.ManagedSpan managedSpan = activate();
+            try {
+                return delegate.apply(t);
+            } finally {
+                deactivate(managedSpan);
+            }
+        }
+    }
+
+    @IgnoreJRERequirement
+    private static final class BiFunctionWithSpan<T, U, R> extends StageWithSpan implements BiFunction<T, U, R> {
+        private final BiFunction<T, U, R> delegate;
+
+        private BiFunctionWithSpan(BiFunction<T, U, R> delegate, SpanManager spanManager, Span span) {
+            super(spanManager, span);
+            this.delegate = delegate;
+        }
+
+        @Override
+        public R apply(T t, U u) {
+            SpanManager.ManagedSpan managedSpan = activate();
+            try {
+                return delegate.apply(t, u);
+            } finally {
+                deactivate(managedSpan);
+            }
+        }
+    }
+
+    @IgnoreJRERequirement
+    private static final class ConsumerWithSpan<T> extends StageWithSpan implements Consumer<T> {
+        private final Consumer<T> delegate;
+
+        private ConsumerWithSpan(Consumer<T> delegate, SpanManager spanManager, Span span) {
+            super(spanManager, span);
+            this.delegate = delegate;
+        }
+
+        @Override
+        public void accept(T t) {
+            SpanManager.ManagedSpan managedSpan = activate();
+            try {
+                delegate.accept(t);
+            } finally {
+                deactivate(managedSpan);
+            }
+        }
+    }
+
+    @IgnoreJRERequirement
+    private static final class BiConsumerWithSpan<T, U> extends StageWithSpan implements BiConsumer<T, U> {
+        private final BiConsumer<T, U> delegate;
+
+        private BiConsumerWithSpan(BiConsumer<T, U> delegate, SpanManager spanManager, Span span) {
+            super(spanManager, span);
+            this.delegate = delegate;
+        }
+
+        @Override
+        public void accept(T t, U u) {
+            SpanManager.ManagedSpan managedSpan = activate();
+            try {
+                delegate.accept(t, u);
+            } finally {
+                deactivate(managedSpan);
+            }
+        }
+    }
+
+    @IgnoreJRERequirement
+    private static final class SupplierWithSpan<T> extends StageWithSpan implements Supplier<T> {
+        private final Supplier<T> delegate;
+
+        private SupplierWithSpan(Supplier<T> delegate, SpanManager spanManager, Span span) {
+            super(spanManager, span);
+            this.delegate = delegate;
+        }
+
+        @Override
+        public T get() {
+            SpanManager.ManagedSpan managedSpan = activate();
+            try {
+                return delegate.get();
+            } finally {
+                deactivate(managedSpan);
+            }
+        }
+    }
+
+    @IgnoreJRERequirement
+    private static final class RunnableWithSpan extends StageWithSpan implements Runnable {
+        private final Runnable delegate;
+
+        private RunnableWithSpan(Runnable delegate, SpanManager spanManager, Span span) {
+            super(spanManager, span);
+            this.delegate = delegate;
+        }
+
+        @Override
+        public void run() {
+            SpanManager.ManagedSpan managedSpan = activate();
+            try {
+                delegate.run();
+            } finally {
+                deactivate(managedSpan);
+            }
+        }
+    }
+
+}
@@ -15,6 +15,7 @@ package io.opentracing.contrib.spanmanager.concurrent;
 
 import io.opentracing.Span;
 import io.opentracing.contrib.spanmanager.SpanManager;
+import io.opentracing.contrib.spanmanager.SpanManagerMetrics;
 
 import java.util.ArrayList;
 import java.util.Collection;
@@ -28,10 +29,17 @@ import java.util.concurrent.*;
  * <em>Note:</em> The current span is merely propagated.
  * It is explicitly <b>not</b> finished when the calls end,
  * nor will new spans be automatically related to the propagated span.
+ * <p>
+ * Calls that are scheduled without a current span are passed to the delegate as-is,
+ * without wrapping them or touching the span manager in the executing thread.
+ * Batches of calls ({@link #invokeAll(Collection) invokeAll}, {@link #invokeAny(Collection) invokeAny}
+ * and {@link #submitAll(Collection) submitAll}) capture the current span once for the whole batch
+ * and are passed to the delegate as a view that wraps each call when it is iterated, instead of a copy.
  */
 public class SpanPropagatingExecutorService implements ExecutorService {
     private final ExecutorService delegate;
     private final SpanManager spanManager;
+    private final SpanManagerMetrics metrics;
 
     /**
      * Wraps the delegate ExecutorService to propagate the {@link SpanManager#current() managed span}
@@ -41,10 +49,25 @@ public class SpanPropagatingExecutorService implements ExecutorService {
      * @param spanManager The manager to propagate spans with.
      */
     public SpanPropagatingExecutorService(ExecutorService delegate, SpanManager spanManager) {
+        this(delegate, spanManager, null);
+    }
+
+    /**
+     * Wraps the delegate ExecutorService to propagate the {@link SpanManager#current() managed span}
+     * of callers into the executed calls, using the specified {@link SpanManager}
+     * and recording the propagated calls in the specified metrics.
+     *
+     * @param delegate    The executorservice to forward calls to.
+     * @param spanManager The manager to propagate spans with.
+     * @param metrics     The metrics to record propagated calls in (optional).
+     */
+    public SpanPropagatingExecutorService(ExecutorService delegate, SpanManager spanManager,
+                                          SpanManagerMetrics metrics) {
         if (delegate == null) throw new NullPointerException("Delegate executor service is <null>.");
         if (spanManager == null) throw new NullPointerException("SpanManager is <null>.");
         this.delegate = delegate;
         this.spanManager = spanManager;
+        this.metrics = metrics;
     }
 
     /**
@@ -56,9 +79,12 @@ public class SpanPropagatingExecutorService implements ExecutorService {
      *
      * @param runnable          The runnable to be executed.
      * @param customCurrentSpan The span to be propagated.
-     * @return The wrapped runnable to execute with the custom span as current span.
+     * @return The wrapped runnable to execute with the custom span as current span,
+     * or the runnable itself if there is no span to propagate.
      */
-    private Runnable runnableWithCurrentSpan(Runnable runnable, Span customCurrentSpan) {
+    Runnable runnableWithCurrentSpan(Runnable runnable, Span customCurrentSpan) {
+        if (metrics != null) metrics.propagated(1, customCurrentSpan != null);
+        if (customCurrentSpan == null) return runnable;
         return new RunnableWithManagedSpan(runnable, spanManager, customCurrentSpan);
     }
 
@@ -72,9 +98,12 @@ public class SpanPropagatingExecutorService implements ExecutorService {
      * @param <T>               The callable result type.
      * @param callable          The callable to be executed.
      * @param customCurrentSpan The span to be propagated.
-     * @return The wrapped callable to execute with the custom span as current span.
+     * @return The wrapped callable to execute with the custom span as current span,
+     * or the callable itself if there is no span to propagate.
      */
-    private <T> Callable<T> callableWithCurrentSpan(Callable<T> callable, Span customCurrentSpan) {
+    <T> Callable<T> callableWithCurrentSpan(Callable<T> callable, Span customCurrentSpan) {
+        if (metrics != null) metrics.propagated(1, customCurrentSpan != null);
+        if (customCurrentSpan == null) return callable;
         return new CallableWithManagedSpan<T>(callable, spanManager, customCurrentSpan);
     }
 
@@ -98,6 +127,25 @@ public class SpanPropagatingExecutorService implements ExecutorService {
         return delegate.submit(callableWithCurrentSpan(task, spanManager.current().getSpan()));
     }
 
+    /**
+     * Submits a batch of tasks, propagating the {@link SpanManager#current() current managed span} into each of them.
+     * <p>
+     * The current span is captured once for the whole batch and the tasks are not copied;
+     * every task is wrapped when it is submitted, sharing the propagation context of the batch.
+     * Tasks are submitted in iteration order. If a submission fails, the tasks that were submitted before remain so.
+     *
+     * @param <T>   The type of the task results.
+     * @param tasks The tasks to submit.
+     * @return The futures of the submitted tasks, in the iteration order of the tasks.
+     * @see #submit(Callable)
+     */
+    public <T> List<Future<T>> submitAll(Collection<? extends Callable<T>> tasks) {
+        Collection<? extends Callable<T>> batch = tasksWithCurrentSpan(tasks, spanManager.current().getSpan());
+        List<Future<T>> futures = new ArrayList<Future<T>>(batch.size());
+        for (Callable<T> task : batch) futures.add(delegate.submit(task));
+        return futures;
+    }
+
     @Override
     public <T> List<Future<T>> invokeAll(Collection<? extends Callable<T>> tasks) throws InterruptedException {
         return delegate.invokeAll(tasksWithCurrentSpan(tasks, spanManager.current().getSpan()));
@@ -148,9 +196,9 @@ public class SpanPropagatingExecutorService implements ExecutorService {
     private <T> Collection<? extends Callable<T>> tasksWithCurrentSpan(
             Collection<? extends Callable<T>> tasks, Span customCurrentSpan) {
         if (tasks == null) throw new NullPointerException("Collection of tasks is <null>.");
-        Collection<Callable<T>> result = new ArrayList<Callable<T>>(tasks.size());
-        for (Callable<T> task : tasks) result.add(callableWithCurrentSpan(task, customCurrentSpan));
-        return result;
+        if (metrics != null) metrics.propagated(tasks.size(), customCurrentSpan != null);
+        if (customCurrentSpan == null) return tasks;
+        return new CallablesWithManagedSpan<T>(tasks, spanManager, customCurrentSpan);
     }
 
 }
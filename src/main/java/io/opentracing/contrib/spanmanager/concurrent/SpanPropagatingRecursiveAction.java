@@ -0,0 +1,85 @@
+/**
+ * Copyright 2017 The OpenTracing Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.opentracing.contrib.spanmanager.concurrent;
+
+import io.opentracing.Span;
+import io.opentracing.contrib.spanmanager.SpanManager;
+import org.codehaus.mojo.animal_sniffer.IgnoreJRERequirement;
+
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * Resultless {@link ForkJoinTask} that propagates the {@link SpanManager#current() current managed span}
+ * from the thread that <em>created</em> the task into its {@link #compute() computation}.
+ * <p>
+ * This is a drop-in replacement for <code>RecursiveAction</code>.
+ * Like the {@link SpanPropagatingRecursiveTask}, the span is only activated
+ * when the task is executed by another thread than the one that created it.
+ * <p>
+ * <em>Note:</em> The current span is merely propagated.
+ * It is explicitly <b>not</b> finished when the task completes.
+ * Fork/join tasks require Java 7 or newer.
+ *
+ * @see SpanPropagatingRecursiveTask
+ */
+@IgnoreJRERequirement // Requires Java 7.
+public abstract class SpanPropagatingRecursiveAction extends ForkJoinTask<Void> {
+    private static final long serialVersionUID = 1L;
+
+    private final transient SpanManager spanManager;
+    private final transient Span span;
+    private final transient Thread creator;
+
+    /**
+     * Creates a new action capturing the current span of the specified span manager.
+     *
+     * @param spanManager The manager to propagate the current span with.
+     */
+    protected SpanPropagatingRecursiveAction(SpanManager spanManager) {
+        if (spanManager == null) throw new NullPointerException("Span manager is <null>.");
+        this.spanManager = spanManager;
+        this.span = spanManager.current().getSpan();
+        this.creator = Thread.currentThread();
+    }
+
+    /**
+     * The main computation performed by this action, executed with the propagated span as current span.
+     */
+    protected abstract void compute();
+
+    @Override
+    public final Void getRawResult() {
+        return null;
+    }
+
+    @Override
+    protected final void setRawResult(Void value) {
+    }
+
+    @Override
+    protected final boolean exec() {
+        if (span == null || creator == Thread.currentThread()) {
+            compute();
+        } else {
+            SpanManager.ManagedSpan managedSpan = spanManager.activate(span);
+            try {
+                compute();
+            } finally {
+                managedSpan.deactivate();
+            }
+        }
+        return true;
+    }
+
+}
@@ -0,0 +1,95 @@
+/**
+ * Copyright 2017 The OpenTracing Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.opentracing.contrib.spanmanager.concurrent;
+
+import io.opentracing.Span;
+import io.opentracing.contrib.spanmanager.SpanManager;
+import org.codehaus.mojo.animal_sniffer.IgnoreJRERequirement;
+
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * Result-bearing {@link ForkJoinTask} that propagates the {@link SpanManager#current() current managed span}
+ * from the thread that <em>created</em> the task into its {@link #compute() computation}.
+ * <p>
+ * This is a drop-in replacement for <code>RecursiveTask</code>: subclasses implement {@link #compute()}
+ * and fork or join subtasks as usual.
+ * The span is only activated when the task is executed by another thread than the one that created it,
+ * e.g. when it was stolen by another worker.
+ * Tasks that are executed by their creating thread (typically after a <code>fork()</code> / <code>join()</code>
+ * by the same worker) run directly, without an activate / deactivate pair for every leaf task.
+ * This assumes the creating thread still has the same current span when it executes its own task,
+ * which holds for subtasks that are forked and joined within a single <code>compute()</code> call.
+ * <p>
+ * <em>Note:</em> The current span is merely propagated.
+ * It is explicitly <b>not</b> finished when the task completes.
+ * Fork/join tasks require Java 7 or newer.
+ *
+ * @param <V> The type of the result of the task.
+ * @see SpanPropagatingRecursiveAction
+ */
+@IgnoreJRERequirement // Requires Java 7.
+public abstract class SpanPropagatingRecursiveTask<V> extends ForkJoinTask<V> {
+    private static final long serialVersionUID = 1L;
+
+    private final transient SpanManager spanManager;
+    private final transient Span span;
+    private final transient Thread creator;
+    private V result;
+
+    /**
+     * Creates a new task capturing the current span of the specified span manager.
+     *
+     * @param spanManager The manager to propagate the current span with.
+     */
+    protected SpanPropagatingRecursiveTask(SpanManager spanManager) {
+        if (spanManager == null) throw new NullPointerException("Span manager is <null>.");
+        this.spanManager = spanManager;
+        this.span = spanManager.current().getSpan();
+        this.creator = Thread.currentThread();
+    }
+
+    /**
+     * The main computation performed by this task, executed with the propagated span as current span.
+     *
+     * @return The result of the computation.
+     */
+    protected abstract V compute();
+
+    @Override
+    public final V getRawResult() {
+        return result;
+    }
+
+    @Override
+    protected final void setRawResult(V value) {
+        result = value;
+    }
+
+    @Override
+    protected final boolean exec() {
+        if (span == null || creator == Thread.currentThread()) {
+            result = compute();
+        } else {
+            SpanManager.ManagedSpan managedSpan = spanManager.activate(span);
+            try {
+                result = compute();
+            } finally {
+                managedSpan.deactivate();
+            }
+        }
+        return true;
+    }
+
+}
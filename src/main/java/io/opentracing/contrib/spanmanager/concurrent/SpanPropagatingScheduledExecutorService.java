@@ -0,0 +1,92 @@
+/**
+ * Copyright 2017 The OpenTracing Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.opentracing.contrib.spanmanager.concurrent;
+
+import io.opentracing.contrib.spanmanager.SpanManager;
+import io.opentracing.contrib.spanmanager.SpanManagerMetrics;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Propagates the {@link SpanManager#current() current managed span} from the caller
+ * into each call that is executed or scheduled.
+ * <p>
+ * The current span is captured once, when a call is scheduled.
+ * Periodic calls are wrapped only once as well; every run re-activates the captured span with the same wrapper,
+ * so scheduling at a fixed rate or with a fixed delay does not allocate a new wrapper per period.
+ * <p>
+ * <em>Note:</em> The current span is merely propagated.
+ * It is explicitly <b>not</b> finished when the calls end,
+ * nor will new spans be automatically related to the propagated span.
+ *
+ * @see SpanPropagatingExecutorService
+ */
+public class SpanPropagatingScheduledExecutorService extends SpanPropagatingExecutorService
+        implements ScheduledExecutorService {
+    private final ScheduledExecutorService delegate;
+    private final SpanManager spanManager;
+
+    /**
+     * Wraps the delegate ScheduledExecutorService to propagate the {@link SpanManager#current() managed span}
+     * of callers into the executed and scheduled calls, using the specified {@link SpanManager}.
+     *
+     * @param delegate    The scheduled executorservice to forward calls to.
+     * @param spanManager The manager to propagate spans with.
+     */
+    public SpanPropagatingScheduledExecutorService(ScheduledExecutorService delegate, SpanManager spanManager) {
+        this(delegate, spanManager, null);
+    }
+
+    /**
+     * Wraps the delegate ScheduledExecutorService to propagate the {@link SpanManager#current() managed span}
+     * of callers into the executed and scheduled calls, using the specified {@link SpanManager}
+     * and recording the propagated calls in the specified metrics.
+     *
+     * @param delegate    The scheduled executorservice to forward calls to.
+     * @param spanManager The manager to propagate spans with.
+     * @param metrics     The metrics to record propagated calls in (optional).
+     */
+    public SpanPropagatingScheduledExecutorService(ScheduledExecutorService delegate, SpanManager spanManager,
+                                                   SpanManagerMetrics metrics) {
+        super(delegate, spanManager, metrics);
+        this.delegate = delegate;
+        this.spanManager = spanManager;
+    }
+
+    @Override
+    public ScheduledFuture<?> schedule(Runnable command, long delay, TimeUnit unit) {
+        return delegate.schedule(runnableWithCurrentSpan(command, spanManager.current().getSpan()), delay, unit);
+    }
+
+    @Override
+    public <V> ScheduledFuture<V> schedule(Callable<V> callable, long delay, TimeUnit unit) {
+        return delegate.schedule(callableWithCurrentSpan(callable, spanManager.current().getSpan()), delay, unit);
+    }
+
+    @Override
+    public ScheduledFuture<?> scheduleAtFixedRate(Runnable command, long initialDelay, long period, TimeUnit unit) {
+        return delegate.scheduleAtFixedRate(
+                runnableWithCurrentSpan(command, spanManager.current().getSpan()), initialDelay, period, unit);
+    }
+
+    @Override
+    public ScheduledFuture<?> scheduleWithFixedDelay(Runnable command, long initialDelay, long delay, TimeUnit unit) {
+        return delegate.scheduleWithFixedDelay(
+                runnableWithCurrentSpan(command, spanManager.current().getSpan()), initialDelay, delay, unit);
+    }
+
+}
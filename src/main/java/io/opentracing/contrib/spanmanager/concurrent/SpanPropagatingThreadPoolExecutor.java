@@ -0,0 +1,408 @@
+/**
+ * Copyright 2017 The OpenTracing Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.opentracing.contrib.spanmanager.concurrent;
+
+import io.opentracing.Span;
+import io.opentracing.contrib.spanmanager.SpanManager;
+import io.opentracing.contrib.spanmanager.SpanManager.ManagedSpan;
+
+import java.util.AbstractQueue;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * {@link ThreadPoolExecutor} that propagates the {@link SpanManager#current() current managed span} from the caller
+ * into each call that is executed, <em>keeping</em> the span active in the worker thread across consecutive calls
+ * that propagate the same span.
+ * <p>
+ * A worker only switches its managed span when a call propagates a different span (or no span at all),
+ * so a batch of calls fanned out from a single traced request costs one activate / deactivate pair per worker
+ * instead of one per call.
+ * The managed span of a worker is deactivated before the worker waits for new calls,
+ * after a call that leaves the queue empty, after a call that throws and once the pool is shut down,
+ * so idle or terminated workers do not keep a span active.
+ * Only a worker that exits while calls are still queued (e.g. when the maximum pool size is reduced)
+ * leaves its span to be discarded with its thread.
+ * <p>
+ * After each call, the current span of the worker is checked against the span that was managed for the call.
+ * If the call left any spans active, the span manager is {@link SpanManager#clear() cleared}
+ * so a leaked activation does not affect later calls executed by the same worker.
+ * A call that deactivates the managed span of the worker itself is tolerated;
+ * the worker activates the span again for the next call that propagates it.
+ * <p>
+ * <em>Note:</em> The current span is merely propagated.
+ * It is explicitly <b>not</b> finished when the calls end,
+ * nor will new spans be automatically related to the propagated span.
+ * Calls that are executed without a current span are not wrapped.
+ * The {@link #getThreadFactory() thread factory} and {@link #getRejectedExecutionHandler() rejection handler}
+ * are used as configured; rejected calls are passed to the handler as they were submitted.
+ *
+ * @see SpanPropagatingExecutorService
+ */
+public class SpanPropagatingThreadPoolExecutor extends ThreadPoolExecutor {
+    private static final Logger LOGGER = Logger.getLogger(SpanPropagatingThreadPoolExecutor.class.getName());
+
+    private final SpanManager spanManager;
+    private final WorkerSpans workerSpans;
+
+    /**
+     * Creates a new thread pool propagating spans with the specified {@link SpanManager}.
+     *
+     * @param corePoolSize    The number of threads to keep in the pool, even if they are idle.
+     * @param maximumPoolSize The maximum number of threads to allow in the pool.
+     * @param keepAliveTime   The time that excess idle threads will wait for new calls before terminating.
+     * @param unit            The time unit of the keepAliveTime argument.
+     * @param workQueue       The queue to hold calls before they are executed.
+     * @param spanManager     The manager to propagate spans with.
+     * @see ThreadPoolExecutor#ThreadPoolExecutor(int, int, long, TimeUnit, BlockingQueue)
+     */
+    public SpanPropagatingThreadPoolExecutor(int corePoolSize, int maximumPoolSize, long keepAliveTime, TimeUnit unit,
+                                             BlockingQueue<Runnable> workQueue, SpanManager spanManager) {
+        this(corePoolSize, maximumPoolSize, keepAliveTime, unit, workQueue,
+                Executors.defaultThreadFactory(), spanManager);
+    }
+
+    /**
+     * Creates a new thread pool propagating spans with the specified {@link SpanManager}.
+     *
+     * @param corePoolSize    The number of threads to keep in the pool, even if they are idle.
+     * @param maximumPoolSize The maximum number of threads to allow in the pool.
+     * @param keepAliveTime   The time that excess idle threads will wait for new calls before terminating.
+     * @param unit            The time unit of the keepAliveTime argument.
+     * @param workQueue       The queue to hold calls before they are executed.
+     * @param threadFactory   The factory to create new threads with.
+     * @param spanManager     The manager to propagate spans with.
+     * @see ThreadPoolExecutor#ThreadPoolExecutor(int, int, long, TimeUnit, BlockingQueue, ThreadFactory)
+     */
+    public SpanPropagatingThreadPoolExecutor(int corePoolSize, int maximumPoolSize, long keepAliveTime, TimeUnit unit,
+                                             BlockingQueue<Runnable> workQueue, ThreadFactory threadFactory,
+                                             SpanManager spanManager) {
+        this(corePoolSize, maximumPoolSize, keepAliveTime, unit, workQueue, threadFactory, spanManager,
+                new WorkerSpans(spanManager));
+    }
+
+    private SpanPropagatingThreadPoolExecutor(int corePoolSize, int maximumPoolSize, long keepAliveTime, TimeUnit unit,
+                                              BlockingQueue<Runnable> workQueue, ThreadFactory threadFactory,
+                                              SpanManager spanManager, WorkerSpans workerSpans) {
+        super(corePoolSize, maximumPoolSize, keepAliveTime, unit, new IdleReleasingQueue(workQueue, workerSpans),
+                threadFactory, new UnwrappingRejectedExecutionHandler(new AbortPolicy()));
+        this.spanManager = spanManager;
+        this.workerSpans = workerSpans;
+    }
+
+    @Override
+    public void execute(Runnable command) {
+        if (command == null) throw new NullPointerException("Command is <null>.");
+        Span span = spanManager.current().getSpan();
+        super.execute(span == null ? command : new CallWithSpan(command, span));
+    }
+
+    /**
+     * Sets the handler for calls that cannot be executed, which receives the calls as they were submitted.
+     */
+    @Override
+    public void setRejectedExecutionHandler(RejectedExecutionHandler handler) {
+        if (handler == null) throw new NullPointerException("Rejected execution handler is <null>.");
+        super.setRejectedExecutionHandler(new UnwrappingRejectedExecutionHandler(handler));
+    }
+
+    @Override
+    public RejectedExecutionHandler getRejectedExecutionHandler() {
+        return ((UnwrappingRejectedExecutionHandler) super.getRejectedExecutionHandler()).delegate;
+    }
+
+    /**
+     * Switches the managed span of the worker to the span of the call, unless it is already managed.
+     */
+    @Override
+    protected void beforeExecute(Thread t, Runnable r) {
+        super.beforeExecute(t, r);
+        workerSpans.switchTo(r instanceof CallWithSpan ? ((CallWithSpan) r).span : null);
+    }
+
+    /**
+     * Clears the span manager if the call left any spans active in the worker.
+     * If the call deactivated the managed span of the worker instead, the worker merely forgets it.
+     * <p>
+     * Releases the managed span of the worker if it is about to terminate,
+     * because the call threw an exception or the pool is shut down,
+     * or if the queue is empty so the worker is about to wait for new calls anyway.
+     */
+    @Override
+    protected void afterExecute(Runnable r, Throwable t) {
+        ManagedSpan expected = workerSpans.current();
+        ManagedSpan current = spanManager.current();
+        if (current.getSpan() != null && current != expected) {
+            LOGGER.log(Level.WARNING, "Clearing span manager, {0} was left active by {1}.", new Object[]{current, r});
+            workerSpans.forget();
+            spanManager.clear();
+        } else if (expected != null && current != expected) {
+            LOGGER.log(Level.FINE, "Managed span {0} of the worker was deactivated by {1}.", new Object[]{expected, r});
+            workerSpans.forget();
+        }
+        if (t != null || isShutdown() || getQueue().isEmpty()) workerSpans.release();
+        super.afterExecute(r, t);
+    }
+
+    /**
+     * Returns the calls that never commenced execution, as they were submitted.
+     * <p>
+     * The returned calls no longer propagate the span that was active when they were submitted,
+     * so {@link Future} tasks can still be cancelled by casting them.
+     */
+    @Override
+    public List<Runnable> shutdownNow() {
+        List<Runnable> calls = super.shutdownNow();
+        List<Runnable> result = new ArrayList<Runnable>(calls.size());
+        for (Runnable call : calls) result.add(unwrap(call));
+        return result;
+    }
+
+    /**
+     * Removes all cancelled {@link Future} tasks from the work queue, including tasks that are queued with a span.
+     */
+    @Override
+    public void purge() {
+        BlockingQueue<Runnable> queue = getQueue();
+        for (Object call : queue.toArray()) {
+            if (call instanceof CallWithSpan) {
+                Runnable delegate = ((CallWithSpan) call).delegate;
+                if (delegate instanceof Future<?> && ((Future<?>) delegate).isCancelled()) queue.remove(call);
+            }
+        }
+        super.purge();
+    }
+
+    private static Runnable unwrap(Object call) {
+        return call instanceof CallWithSpan ? ((CallWithSpan) call).delegate : (Runnable) call;
+    }
+
+    /**
+     * Call that is queued with its propagated span.
+     * The span is managed by the worker in {@link #beforeExecute(Thread, Runnable)}, not by the call itself.
+     */
+    private static final class CallWithSpan implements Runnable {
+        private final Runnable delegate;
+        private final Span span;
+
+        private CallWithSpan(Runnable delegate, Span span) {
+            this.delegate = delegate;
+            this.span = span;
+        }
+
+        @Override
+        public void run() {
+            delegate.run();
+        }
+    }
+
+    /**
+     * The managed spans that the worker threads keep active between calls.
+     */
+    private static final class WorkerSpans {
+        private final SpanManager spanManager;
+        private final ThreadLocal<ManagedSpan> managed = new ThreadLocal<ManagedSpan>();
+
+        private WorkerSpans(SpanManager spanManager) {
+            if (spanManager == null) throw new NullPointerException("SpanManager is <null>.");
+            this.spanManager = spanManager;
+        }
+
+        /**
+         * @param span The span to manage in the current worker thread (or <code>null</code> for no span).
+         */
+        private void switchTo(Span span) {
+            ManagedSpan current = managed.get();
+            if (current != null) {
+                if (current.getSpan() == span) return; // Keep the span of the previous call.
+                current.deactivate();
+            }
+            if (span == null) managed.remove();
+            else managed.set(spanManager.activate(span));
+        }
+
+        /**
+         * @return The managed span of the current worker thread, or <code>null</code> if there is none.
+         */
+        private ManagedSpan current() {
+            return managed.get();
+        }
+
+        /**
+         * Forgets the managed span of the current worker thread without deactivating it.
+         */
+        private void forget() {
+            managed.remove();
+        }
+
+        /**
+         * Deactivates the managed span of the current worker thread, if any.
+         */
+        private void release() {
+            ManagedSpan current = managed.get();
+            if (current != null) {
+                managed.remove();
+                current.deactivate();
+            }
+        }
+    }
+
+    /**
+     * Rejected execution handler that passes the calls as they were submitted to the configured handler.
+     */
+    private static final class UnwrappingRejectedExecutionHandler implements RejectedExecutionHandler {
+        private final RejectedExecutionHandler delegate;
+
+        private UnwrappingRejectedExecutionHandler(RejectedExecutionHandler delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public void rejectedExecution(Runnable r, ThreadPoolExecutor executor) {
+            delegate.rejectedExecution(unwrap(r), executor);
+        }
+    }
+
+    /**
+     * Work queue that releases the managed span of a worker before the worker blocks waiting for new calls.
+     * <p>
+     * Calls executed with a span are queued wrapped with that span,
+     * so {@link #remove(Object)} and {@link #contains(Object)} also match the submitted calls within the wrappers.
+     * Iterating the queue returns the wrapped calls.
+     */
+    private static final class IdleReleasingQueue extends AbstractQueue<Runnable> implements BlockingQueue<Runnable> {
+        private final BlockingQueue<Runnable> delegate;
+        private final WorkerSpans workerSpans;
+
+        private IdleReleasingQueue(BlockingQueue<Runnable> delegate, WorkerSpans workerSpans) {
+            if (delegate == null) throw new NullPointerException("Work queue is <null>.");
+            this.delegate = delegate;
+            this.workerSpans = workerSpans;
+        }
+
+        @Override
+        public Runnable take() throws InterruptedException {
+            Runnable call = delegate.poll();
+            if (call == null) {
+                workerSpans.release();
+                call = delegate.take();
+            }
+            return call;
+        }
+
+        @Override
+        public Runnable poll(long timeout, TimeUnit unit) throws InterruptedException {
+            Runnable call = delegate.poll();
+            if (call == null) {
+                workerSpans.release();
+                call = delegate.poll(timeout, unit);
+            }
+            return call;
+        }
+
+        @Override
+        public Runnable poll() {
+            return delegate.poll();
+        }
+
+        @Override
+        public Runnable peek() {
+            return delegate.peek();
+        }
+
+        @Override
+        public boolean offer(Runnable runnable) {
+            return delegate.offer(runnable);
+        }
+
+        @Override
+        public boolean offer(Runnable runnable, long timeout, TimeUnit unit) throws InterruptedException {
+            return delegate.offer(runnable, timeout, unit);
+        }
+
+        @Override
+        public void put(Runnable runnable) throws InterruptedException {
+            delegate.put(runnable);
+        }
+
+        @Override
+        public boolean remove(Object o) {
+            Object queued = find(o);
+            return queued != null && delegate.remove(queued);
+        }
+
+        @Override
+        public boolean contains(Object o) {
+            return find(o) != null;
+        }
+
+        /**
+         * @param o The call to find.
+         * @return The queued call or its wrapper, or <code>null</code> if the call is not queued.
+         */
+        private Object find(Object o) {
+            if (o == null) return null;
+            for (Runnable queued : delegate) {
+                if (o.equals(queued) || o.equals(unwrap(queued))) return queued;
+            }
+            return null;
+        }
+
+        @Override
+        public int remainingCapacity() {
+            return delegate.remainingCapacity();
+        }
+
+        @Override
+        public int drainTo(Collection<? super Runnable> c) {
+            return delegate.drainTo(c);
+        }
+
+        @Override
+        public int drainTo(Collection<? super Runnable> c, int maxElements) {
+            return delegate.drainTo(c, maxElements);
+        }
+
+        @Override
+        public Object[] toArray() {
+            return delegate.toArray();
+        }
+
+        @Override
+        public <T> T[] toArray(T[] a) {
+            return delegate.toArray(a);
+        }
+
+        @Override
+        public Iterator<Runnable> iterator() {
+            return delegate.iterator();
+        }
+
+        @Override
+        public int size() {
+            return delegate.size();
+        }
+
+        @Override
+        public boolean isEmpty() {
+            return delegate.isEmpty();
+        }
+    }
+
+}
@@ -23,15 +23,22 @@ import java.util.Map;
  * A {@link Span} that automatically {@link #deactivate() deactivates}
  * when {@link #finish() finished} or {@link #close() closed}.
  * <p>
- * All other methods are forwarded to the actual managed Span.
+ * All other methods are forwarded to the actual managed Span,
+ * except that tags, logs and the operation name of unsampled spans are discarded.
  */
 final class AutoReleasingManagedSpan implements Span, SpanManager.ManagedSpan {
 
     private final SpanManager.ManagedSpan managedSpan;
+    private final boolean sampled;
 
     AutoReleasingManagedSpan(SpanManager.ManagedSpan managedSpan) {
+        this(managedSpan, true);
+    }
+
+    AutoReleasingManagedSpan(SpanManager.ManagedSpan managedSpan, boolean sampled) {
         if (managedSpan == null) throw new NullPointerException("Managed span was <null>.");
         this.managedSpan = managedSpan;
+        this.sampled = sampled;
     }
 
     @Override
@@ -92,43 +99,43 @@ final class AutoReleasingManagedSpan implements Span, SpanManager.ManagedSpan {
 
     @Override
     public Span setTag(String key, String value) {
-        getSpan().setTag(key, value);
+        if (sampled) getSpan().setTag(key, value);
         return this;
     }
 
     @Override
     public Span setTag(String key, boolean value) {
-        getSpan().setTag(key, value);
+        if (sampled) getSpan().setTag(key, value);
         return this;
     }
 
     @Override
     public Span setTag(String key, Number value) {
-        getSpan().setTag(key, value);
+        if (sampled) getSpan().setTag(key, value);
         return this;
     }
 
     @Override
     public Span log(Map<String, ?> fields) {
-        getSpan().log(fields);
+        if (sampled) getSpan().log(fields);
         return this;
     }
 
     @Override
     public Span log(long timestampMicroseconds, Map<String, ?> fields) {
-        getSpan().log(timestampMicroseconds, fields);
+        if (sampled) getSpan().log(timestampMicroseconds, fields);
         return this;
     }
 
     @Override
     public Span log(String event) {
-        getSpan().log(event);
+        if (sampled) getSpan().log(event);
         return this;
     }
 
     @Override
     public Span log(long timestampMicroseconds, String event) {
-        getSpan().log(timestampMicroseconds, event);
+        if (sampled) getSpan().log(timestampMicroseconds, event);
         return this;
     }
 
@@ -145,21 +152,21 @@ final class AutoReleasingManagedSpan implements Span, SpanManager.ManagedSpan {
 
     @Override
     public Span setOperationName(String operationName) {
-        getSpan().setOperationName(operationName);
+        if (sampled) getSpan().setOperationName(operationName);
         return this;
     }
 
     @SuppressWarnings("deprecation") // We simply delegate this method as we're told.
     @Override
     public Span log(String eventName, Object payload) {
-        getSpan().log(eventName, payload);
+        if (sampled) getSpan().log(eventName, payload);
         return this;
     }
 
     @SuppressWarnings("deprecation") // We simply delegate this method as we're told.
     @Override
     public Span log(long timestampMicroseconds, String eventName, Object payload) {
-        getSpan().log(timestampMicroseconds, eventName, payload);
+        if (sampled) getSpan().log(timestampMicroseconds, eventName, payload);
         return this;
     }
 
@@ -0,0 +1,165 @@
+/**
+ * Copyright 2017 The OpenTracing Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.opentracing.contrib.spanmanager.tracer;
+
+import io.opentracing.Span;
+import io.opentracing.SpanContext;
+
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+
+/**
+ * A {@link Span} that hands itself to its {@link BufferingTracer} when it is {@link #finish() finished}
+ * or {@link #close() closed}, so the delegate span is finished by the reporter thread of the tracer.
+ * <p>
+ * The finish timestamp is taken when the span is finished, not when it is reported.
+ * It is the wall clock time at which the span was started plus the elapsed {@link System#nanoTime()},
+ * so the duration of the span keeps the precision of <code>nanoTime</code>
+ * and never becomes negative, even if the wall clock is adjusted in the meantime.
+ * All other methods are forwarded to the delegate span.
+ */
+final class BufferedSpan implements Span {
+    private static final AtomicIntegerFieldUpdater<BufferedSpan> FINISHED =
+            AtomicIntegerFieldUpdater.newUpdater(BufferedSpan.class, "finished");
+
+    private final BufferingTracer tracer;
+    final Span delegate;
+    private final long startMicros;
+    private final long startNanos;
+    long finishMicros; // Published to the reporter thread by the ring buffer.
+    private volatile int finished = 0;
+
+    /**
+     * @param tracer      The tracer to buffer the finished span with.
+     * @param delegate    The started delegate span.
+     * @param startMicros The wall clock time when the span was started, in microseconds since the epoch.
+     * @param startNanos  The {@link System#nanoTime()} when the span was started.
+     */
+    BufferedSpan(BufferingTracer tracer, Span delegate, long startMicros, long startNanos) {
+        if (delegate == null) throw new NullPointerException("Delegate Span was <null>.");
+        this.tracer = tracer;
+        this.delegate = delegate;
+        this.startMicros = startMicros;
+        this.startNanos = startNanos;
+    }
+
+    /**
+     * Buffers this span to be finished by the reporter thread; finishing a span more than once is ignored.
+     */
+    @Override
+    public void finish() {
+        finish(startMicros + (System.nanoTime() - startNanos) / 1000L);
+    }
+
+    /**
+     * Buffers this span to be finished by the reporter thread; finishing a span more than once is ignored.
+     */
+    @Override
+    public void finish(long finishMicros) {
+        if (finished != 0 || !FINISHED.compareAndSet(this, 0, 1)) return;
+        this.finishMicros = finishMicros;
+        tracer.buffer(this);
+    }
+
+    @Override
+    public void close() {
+        finish();
+    }
+
+    // Default behaviour is forwarded to the delegate Span:
+
+    @Override
+    public SpanContext context() {
+        return delegate.context();
+    }
+
+    @Override
+    public Span setTag(String key, String value) {
+        delegate.setTag(key, value);
+        return this;
+    }
+
+    @Override
+    public Span setTag(String key, boolean value) {
+        delegate.setTag(key, value);
+        return this;
+    }
+
+    @Override
+    public Span setTag(String key, Number value) {
+        delegate.setTag(key, value);
+        return this;
+    }
+
+    @Override
+    public Span log(Map<String, ?> fields) {
+        delegate.log(fields);
+        return this;
+    }
+
+    @Override
+    public Span log(long timestampMicroseconds, Map<String, ?> fields) {
+        delegate.log(timestampMicroseconds, fields);
+        return this;
+    }
+
+    @Override
+    public Span log(String event) {
+        delegate.log(event);
+        return this;
+    }
+
+    @Override
+    public Span log(long timestampMicroseconds, String event) {
+        delegate.log(timestampMicroseconds, event);
+        return this;
+    }
+
+    @Override
+    public Span setBaggageItem(String key, String value) {
+        delegate.setBaggageItem(key, value);
+        return this;
+    }
+
+    @Override
+    public String getBaggageItem(String key) {
+        return delegate.getBaggageItem(key);
+    }
+
+    @Override
+    public Span setOperationName(String operationName) {
+        delegate.setOperationName(operationName);
+        return this;
+    }
+
+    @SuppressWarnings("deprecation") // We simply delegate this method as we're told.
+    @Override
+    public Span log(String eventName, Object payload) {
+        delegate.log(eventName, payload);
+        return this;
+    }
+
+    @SuppressWarnings("deprecation") // We simply delegate this method as we're told.
+    @Override
+    public Span log(long timestampMicroseconds, String eventName, Object payload) {
+        delegate.log(timestampMicroseconds, eventName, payload);
+        return this;
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + '{' + delegate + '}';
+    }
+
+}
@@ -0,0 +1,99 @@
+/**
+ * Copyright 2017 The OpenTracing Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.opentracing.contrib.spanmanager.tracer;
+
+import io.opentracing.References;
+import io.opentracing.Span;
+import io.opentracing.SpanContext;
+import io.opentracing.Tracer.SpanBuilder;
+
+/**
+ * {@link SpanBuilder} that starts {@link BufferedSpan buffered spans} of a {@link BufferingTracer}.
+ * <p>
+ * Unless an explicit start timestamp is provided, the start timestamp is taken from the wall clock
+ * and passed to the delegate, so the buffered span can measure its duration from the same timestamp.
+ * All other methods are forwarded to the delegate span builder.
+ */
+final class BufferingSpanBuilder implements SpanBuilder {
+
+    private final BufferingTracer tracer;
+    private SpanBuilder delegate;
+    private boolean startTimestamp = false;
+
+    BufferingSpanBuilder(BufferingTracer tracer, SpanBuilder delegate) {
+        if (delegate == null) throw new NullPointerException("Delegate SpanBuilder was <null>.");
+        this.tracer = tracer;
+        this.delegate = delegate;
+    }
+
+    /**
+     * Replaces the {@link #delegate} SpanBuilder by a delegated-method result.
+     *
+     * @param spanBuilder The builder returned from the delegate (normally '== delegate').
+     * @return This re-wrapped BufferingSpanBuilder.
+     */
+    private SpanBuilder rewrap(SpanBuilder spanBuilder) {
+        if (spanBuilder != null) {
+            this.delegate = spanBuilder;
+        }
+        return this;
+    }
+
+    @Override
+    public Span start() {
+        long startMicros = System.currentTimeMillis() * 1000L;
+        long startNanos = System.nanoTime();
+        if (!startTimestamp) rewrap(delegate.withStartTimestamp(startMicros));
+        return new BufferedSpan(tracer, delegate.start(), startMicros, startNanos);
+    }
+
+    // All other methods are forwarded to the delegate SpanBuilder.
+
+    @Override
+    public SpanBuilder asChildOf(SpanContext parent) {
+        return addReference(References.CHILD_OF, parent);
+    }
+
+    @Override
+    public SpanBuilder asChildOf(Span parent) {
+        return addReference(References.CHILD_OF, parent.context());
+    }
+
+    @Override
+    public SpanBuilder addReference(String referenceType, SpanContext context) {
+        return rewrap(delegate.addReference(referenceType, context));
+    }
+
+    @Override
+    public SpanBuilder withTag(String key, String value) {
+        return rewrap(delegate.withTag(key, value));
+    }
+
+    @Override
+    public SpanBuilder withTag(String key, boolean value) {
+        return rewrap(delegate.withTag(key, value));
+    }
+
+    @Override
+    public SpanBuilder withTag(String key, Number value) {
+        return rewrap(delegate.withTag(key, value));
+    }
+
+    @Override
+    public SpanBuilder withStartTimestamp(long microseconds) {
+        startTimestamp = true;
+        return rewrap(delegate.withStartTimestamp(microseconds));
+    }
+
+}
@@ -0,0 +1,207 @@
+/**
+ * Copyright 2017 The OpenTracing Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.opentracing.contrib.spanmanager.tracer;
+
+import io.opentracing.Span;
+import io.opentracing.SpanContext;
+import io.opentracing.Tracer;
+import io.opentracing.propagation.Format;
+
+import java.io.Closeable;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * {@link Tracer} decorator that finishes the spans of its delegate on a background <em>reporter</em> thread,
+ * so that finishing a span never runs the reporting of the delegate tracer on the calling thread.
+ * <p>
+ * Finished spans are handed to a bounded, lock-free ring buffer.
+ * The reporter thread drains all buffered spans, finishing their delegate spans
+ * with the timestamps of their original finish calls, and sleeps while the buffer is empty.
+ * The first span that is finished while the reporter sleeps wakes it up again.
+ * When the buffer is full, finished spans are dropped instead of blocking the calling thread.
+ * <strong>Dropped spans are never finished in the delegate tracer</strong>;
+ * {@link #getDroppedSpans()} counts them and the first dropped span is logged as a warning.
+ * <p>
+ * Spans started by this tracer take their start timestamp from the wall clock, unless it is provided explicitly,
+ * and measure their finish timestamp from it with {@link System#nanoTime()},
+ * so their start and finish timestamps come from a single clock.
+ * It can be combined with the {@link ManagedSpanTracer} by wrapping it:
+ * <code>new ManagedSpanTracer(new BufferingTracer(tracer, capacity), spanManager)</code>.
+ * <p>
+ * The reporter thread is a daemon thread; {@link #close() closing} the tracer reports all buffered spans
+ * and stops the thread. Spans that are finished after closing are finished synchronously.
+ * Exceptions and errors from finishing delegate spans are logged and do not stop the reporter.
+ */
+public final class BufferingTracer implements Tracer, Closeable {
+
+    private static final Logger LOGGER = Logger.getLogger(BufferingTracer.class.getName());
+    private static final long IDLE_PARK_NANOS = TimeUnit.SECONDS.toNanos(1L);
+
+    private final Tracer delegate;
+    private final MpscRingBuffer<BufferedSpan> buffer;
+    private final AtomicLong droppedSpans = new AtomicLong();
+    private volatile long reportedSpans = 0L; // Only written by the reporter thread, or after it stopped.
+    private final Thread reporter;
+    private volatile boolean sleeping = false; // Only written by the reporter thread.
+    private volatile boolean closed = false; // Only written while holding the lock of this tracer.
+
+    /**
+     * Buffers finished spans from <code>delegate</code> to be reported by a background thread.
+     *
+     * @param delegate The tracer to be wrapped.
+     * @param capacity The number of finished spans that can be buffered (rounded up to a power of two).
+     */
+    public BufferingTracer(Tracer delegate, int capacity) {
+        if (delegate == null) throw new NullPointerException("Delegate Tracer is <null>.");
+        this.delegate = delegate;
+        this.buffer = new MpscRingBuffer<BufferedSpan>(capacity);
+        this.reporter = new Thread(new Reporter(), "BufferingTracer-reporter");
+        this.reporter.setDaemon(true);
+        this.reporter.start();
+    }
+
+    @Override
+    public <C> void inject(SpanContext spanContext, Format<C> format, C carrier) {
+        delegate.inject(spanContext, format, carrier);
+    }
+
+    @Override
+    public <C> SpanContext extract(Format<C> format, C carrier) {
+        return delegate.extract(format, carrier);
+    }
+
+    @Override
+    public SpanBuilder buildSpan(String operationName) {
+        return new BufferingSpanBuilder(this, delegate.buildSpan(operationName));
+    }
+
+    /**
+     * @return The number of finished spans that were buffered.
+     */
+    public long getBufferedSpans() {
+        return buffer.offered();
+    }
+
+    /**
+     * @return The number of buffered spans that were finished by the reporter thread.
+     */
+    public long getReportedSpans() {
+        return reportedSpans;
+    }
+
+    /**
+     * @return The number of finished spans that were dropped because the buffer was full
+     * and were therefore never finished in the delegate tracer.
+     */
+    public long getDroppedSpans() {
+        return droppedSpans.get();
+    }
+
+    /**
+     * Reports all buffered spans and stops the reporter thread; closing the tracer again has no effect.
+     * <p>
+     * Spans that are buffered after the reporter thread stopped are reported by the closing thread,
+     * or by the thread that buffered them once the tracer is closed.
+     */
+    @Override
+    public synchronized void close() {
+        if (closed) return;
+        closed = true;
+        LockSupport.unpark(reporter);
+        boolean interrupted = false;
+        while (reporter.isAlive()) {
+            try {
+                reporter.join();
+            } catch (InterruptedException ie) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) Thread.currentThread().interrupt();
+        drain(); // The reporter has stopped, so this thread is the only consumer while it holds the lock.
+    }
+
+    /**
+     * Buffers a finished span for the reporter thread, or drops it if the buffer is full.
+     *
+     * @param span The finished span.
+     */
+    void buffer(BufferedSpan span) {
+        if (closed) {
+            report(span);
+        } else if (buffer.offer(span)) {
+            if (closed) drainAfterClose(); // The reporter may have stopped before it saw the span.
+            else if (sleeping) LockSupport.unpark(reporter);
+        } else if (droppedSpans.incrementAndGet() == 1L) {
+            LOGGER.log(Level.WARNING, "Buffer of {0} is full, dropping finished spans without reporting them.", this);
+        }
+    }
+
+    /**
+     * Reports the spans that were buffered while the tracer was being closed.
+     * <p>
+     * The lock is only acquired once {@link #close()} has set the closed flag, and therefore after it stopped
+     * the reporter thread, so the ring buffer keeps a single consumer.
+     */
+    private synchronized void drainAfterClose() {
+        drain();
+    }
+
+    /**
+     * Reports all buffered spans; may only be called by the single consumer of the buffer.
+     */
+    private void drain() {
+        for (BufferedSpan span = buffer.poll(); span != null; span = buffer.poll()) {
+            report(span);
+            reportedSpans = reportedSpans + 1L;
+        }
+    }
+
+    private void report(BufferedSpan span) {
+        try {
+            span.delegate.finish(span.finishMicros);
+        } catch (Throwable t) { // An error must not stop the reporter, or all later spans would be dropped.
+            LOGGER.log(Level.WARNING, "Exception finishing " + span + ": " + t.getMessage(), t);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "BufferingTracer{" + delegate + '}';
+    }
+
+    /**
+     * Drains the buffer until the tracer is closed, parking whenever the buffer is empty.
+     * <p>
+     * The reporter announces that it is sleeping before it checks the buffer a last time,
+     * so a producer either sees the announcement and unparks the reporter,
+     * or its span is seen by that check. The park timeout is merely a safety net.
+     */
+    private final class Reporter implements Runnable {
+        public void run() {
+            while (true) {
+                boolean stopping = closed; // Read before draining, so every span buffered before closing is reported.
+                drain();
+                if (stopping) return;
+                sleeping = true;
+                if (buffer.isEmpty() && !closed) LockSupport.parkNanos(this, IDLE_PARK_NANOS);
+                sleeping = false;
+            }
+        }
+    }
+
+}
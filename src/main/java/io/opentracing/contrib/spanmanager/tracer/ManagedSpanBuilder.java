@@ -17,6 +17,7 @@ import io.opentracing.References;
 import io.opentracing.Span;
 import io.opentracing.SpanContext;
 import io.opentracing.Tracer.SpanBuilder;
+import io.opentracing.contrib.spanmanager.DefaultSpanManager;
 import io.opentracing.contrib.spanmanager.SpanManager;
 
 import java.util.Collections;
@@ -26,23 +27,69 @@ import java.util.logging.Logger;
 /**
  * {@link SpanBuilder} that automatically {@link SpanManager#activate(Span) activates} newly started spans.
  * <p>
+ * Unless a reference was added explicitly or the builder {@link #ignoreActiveSpan() ignores the active span},
+ * the new span becomes a child of the {@link SpanManager#current() current managed span} when it is started.
+ * <p>
  * The activated ManagedSpan is wrapped in an {@linkplain AutoReleasingManagedSpan}
- * to automatically deactivate when finished.<br>
+ * to automatically deactivate when finished.
+ * The {@link DefaultSpanManager} provides {@link DefaultSpanManager#activateAutoReleasing(Span) its own}
+ * auto-releasing managed spans, so no wrapper is needed.<br>
  * All other methods are forwarded to the delegate span builder.
+ * <p>
+ * A {@link ManagedSpanTracer#ManagedSpanTracer(io.opentracing.Tracer, SpanManager, boolean) recycling tracer}
+ * reuses the builder of a thread for its next span once it was started.
+ * Recycled builders throw an {@link IllegalStateException} when they are used after <code>start()</code>,
+ * until the tracer reuses them.
  *
  * @see SpanManager
  * @see AutoReleasingManagedSpan#finish()
  */
-final class ManagedSpanBuilder implements SpanBuilder {
+public final class ManagedSpanBuilder implements SpanBuilder {
 
     SpanBuilder delegate;
     private final SpanManager spanManager;
+    private final boolean recycled;
+    private final SamplingInspector samplingInspector;
+    private boolean resolveParent = true;
+    private boolean started = false;
 
     ManagedSpanBuilder(SpanBuilder delegate, SpanManager spanManager) {
+        this(delegate, spanManager, false, null);
+    }
+
+    ManagedSpanBuilder(SpanBuilder delegate, SpanManager spanManager, boolean recycled,
+                       SamplingInspector samplingInspector) {
         if (delegate == null) throw new NullPointerException("Delegate SpanBuilder was <null>.");
         if (spanManager == null) throw new NullPointerException("Span manager was <null>.");
         this.delegate = delegate;
         this.spanManager = spanManager;
+        this.recycled = recycled;
+        this.samplingInspector = samplingInspector;
+    }
+
+    /**
+     * @return Whether this recycled builder was started and can be {@link #reset(SpanBuilder) reset}.
+     */
+    boolean isReusable() {
+        return started;
+    }
+
+    /**
+     * Prepares this recycled builder for a new span.
+     *
+     * @param delegate The delegate SpanBuilder for the new span.
+     * @return This builder.
+     */
+    ManagedSpanBuilder reset(SpanBuilder delegate) {
+        if (delegate == null) throw new NullPointerException("Delegate SpanBuilder was <null>.");
+        this.delegate = delegate;
+        this.resolveParent = true;
+        this.started = false;
+        return this;
+    }
+
+    private void checkNotStarted() {
+        if (started) throw new IllegalStateException("Recycled SpanBuilder was used after start().");
     }
 
     /**
@@ -51,15 +98,29 @@ final class ManagedSpanBuilder implements SpanBuilder {
      * @param spanBuilder The builder returned from the delegate (normally '== delegate').
      * @return This re-wrapped ManagedSpanBuilder.
      */
-    SpanBuilder rewrap(SpanBuilder spanBuilder) {
+    ManagedSpanBuilder rewrap(SpanBuilder spanBuilder) {
         if (spanBuilder != null) {
             this.delegate = spanBuilder;
         }
         return this;
     }
 
+    /**
+     * Does not make the new span a child of the {@link SpanManager#current() current managed span}.
+     *
+     * @return This builder.
+     */
+    public ManagedSpanBuilder ignoreActiveSpan() {
+        checkNotStarted();
+        resolveParent = false;
+        return this;
+    }
+
     /**
      * Starts the built Span and {@link SpanManager#activate(Span) activates} it.
+     * <p>
+     * Without explicit references, the span becomes a child of the current managed span, if any.
+     * Tags and logs of spans that are not sampled according to the {@link SamplingInspector} are discarded.
      *
      * @return a new 'current' Span that releases itself upon <em>finish</em> or <em>close</em> calls.
      * @see SpanManager#activate(Span)
@@ -67,43 +128,67 @@ final class ManagedSpanBuilder implements SpanBuilder {
      */
     @Override
     public Span start() {
-        return new AutoReleasingManagedSpan(spanManager.activate(delegate.start()));
+        checkNotStarted();
+        if (resolveParent) {
+            Span parent = spanManager.current().getSpan();
+            if (parent != null) rewrap(delegate.addReference(References.CHILD_OF, parent.context()));
+        }
+        Span span;
+        try {
+            span = delegate.start();
+        } finally {
+            if (recycled) {
+                started = true;
+                delegate = null; // Don't hold on to the delegate until this builder is reused.
+            }
+        }
+        boolean sampled = samplingInspector == null || samplingInspector.isSampled(span.context());
+        if (spanManager instanceof DefaultSpanManager) { // A single object per span.
+            return ((DefaultSpanManager) spanManager).activateAutoReleasing(span, sampled);
+        }
+        return new AutoReleasingManagedSpan(spanManager.activate(span), sampled);
     }
 
     // All other methods are forwarded to the delegate SpanBuilder.
 
     @Override
-    public SpanBuilder asChildOf(SpanContext parent) {
+    public ManagedSpanBuilder asChildOf(SpanContext parent) {
         return addReference(References.CHILD_OF, parent);
     }
 
     @Override
-    public SpanBuilder asChildOf(Span parent) {
+    public ManagedSpanBuilder asChildOf(Span parent) {
         return addReference(References.CHILD_OF, parent.context());
     }
 
     @Override
-    public SpanBuilder addReference(String referenceType, SpanContext context) {
+    public ManagedSpanBuilder addReference(String referenceType, SpanContext context) {
+        checkNotStarted();
+        resolveParent = false; // An explicit reference replaces the implicit parent.
         return rewrap(delegate.addReference(referenceType, context));
     }
 
     @Override
-    public SpanBuilder withTag(String key, String value) {
+    public ManagedSpanBuilder withTag(String key, String value) {
+        checkNotStarted();
         return rewrap(delegate.withTag(key, value));
     }
 
     @Override
-    public SpanBuilder withTag(String key, boolean value) {
+    public ManagedSpanBuilder withTag(String key, boolean value) {
+        checkNotStarted();
         return rewrap(delegate.withTag(key, value));
     }
 
     @Override
-    public SpanBuilder withTag(String key, Number value) {
+    public ManagedSpanBuilder withTag(String key, Number value) {
+        checkNotStarted();
         return rewrap(delegate.withTag(key, value));
     }
 
     @Override
-    public SpanBuilder withStartTimestamp(long microseconds) {
+    public ManagedSpanBuilder withStartTimestamp(long microseconds) {
+        checkNotStarted();
         return rewrap(delegate.withStartTimestamp(microseconds));
     }
 
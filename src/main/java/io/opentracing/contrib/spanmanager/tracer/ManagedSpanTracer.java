@@ -26,6 +26,8 @@ import io.opentracing.propagation.Format;
  * <li>{@linkplain Span Spans} created with this tracer are
  * automatically {@link SpanManager#activate(Span) activated} when started,</li>
  * <li>and automatically {@link SpanManager.ManagedSpan#deactivate() deactivated} when they finish.</li>
+ * <li>Spans without explicit references become children of the current managed span,
+ * unless their builder {@link ManagedSpanBuilder#ignoreActiveSpan() ignores the active span}.</li>
  * </ol>
  * <p>
  * Implementation note: This {@link Tracer} wraps the {@linkplain SpanBuilder} and {@linkplain Span}
@@ -40,6 +42,8 @@ public final class ManagedSpanTracer implements Tracer {
 
     private final Tracer delegate;
     private final SpanManager spanManager;
+    private final ThreadLocal<ManagedSpanBuilder> builders;
+    private final SamplingInspector samplingInspector;
 
     /**
      * Automatically manages created spans from <code>delegate</code> using the the specified {@link SpanManager}.
@@ -48,10 +52,47 @@ public final class ManagedSpanTracer implements Tracer {
      * @param spanManager The manager providing span propagation.
      */
     public ManagedSpanTracer(Tracer delegate, SpanManager spanManager) {
+        this(delegate, spanManager, false);
+    }
+
+    /**
+     * Automatically manages created spans from <code>delegate</code> using the the specified {@link SpanManager},
+     * optionally recycling the span builders per thread.
+     * <p>
+     * A recycled builder is reused by the next {@link #buildSpan(String)} call of the same thread
+     * once it has been started, so it must not be used anymore after <code>start()</code>;
+     * doing so throws an {@link IllegalStateException} until the builder is reused.
+     * Threads that build several spans at the same time get a new builder for every span that is not the first.
+     *
+     * @param delegate        The tracer to be wrapped.
+     * @param spanManager     The manager providing span propagation.
+     * @param recycleBuilders Whether to reuse the span builders per thread.
+     */
+    public ManagedSpanTracer(Tracer delegate, SpanManager spanManager, boolean recycleBuilders) {
+        this(delegate, spanManager, recycleBuilders, null);
+    }
+
+    /**
+     * Automatically manages created spans from <code>delegate</code> using the the specified {@link SpanManager},
+     * optionally recycling the span builders per thread and skipping the tags and logs of unsampled spans.
+     * <p>
+     * Spans that are not sampled according to the <code>samplingInspector</code> are still activated,
+     * so spans started within them become their children and are not sampled either.
+     * However, their tags, logs and operation name are discarded instead of forwarded to the delegate span.
+     *
+     * @param delegate          The tracer to be wrapped.
+     * @param spanManager       The manager providing span propagation.
+     * @param recycleBuilders   Whether to reuse the span builders per thread.
+     * @param samplingInspector The inspector to detect unsampled spans, or <code>null</code> to forward everything.
+     */
+    public ManagedSpanTracer(Tracer delegate, SpanManager spanManager, boolean recycleBuilders,
+                             SamplingInspector samplingInspector) {
         if (delegate == null) throw new NullPointerException("Delegate Tracer is <null>.");
         if (spanManager == null) throw new NullPointerException("Span manager is <null>.");
         this.delegate = delegate;
         this.spanManager = spanManager;
+        this.builders = recycleBuilders ? new ThreadLocal<ManagedSpanBuilder>() : null;
+        this.samplingInspector = samplingInspector;
     }
 
     @Override
@@ -65,8 +106,16 @@ public final class ManagedSpanTracer implements Tracer {
     }
 
     @Override
-    public SpanBuilder buildSpan(String operationName) {
-        return new ManagedSpanBuilder(delegate.buildSpan(operationName), spanManager);
+    public ManagedSpanBuilder buildSpan(String operationName) {
+        if (builders == null) {
+            return new ManagedSpanBuilder(delegate.buildSpan(operationName), spanManager, false, samplingInspector);
+        }
+        ManagedSpanBuilder builder = builders.get();
+        if (builder != null && builder.isReusable()) return builder.reset(delegate.buildSpan(operationName));
+        ManagedSpanBuilder newBuilder =
+                new ManagedSpanBuilder(delegate.buildSpan(operationName), spanManager, true, samplingInspector);
+        if (builder == null) builders.set(newBuilder);
+        return newBuilder;
     }
 
     @Override
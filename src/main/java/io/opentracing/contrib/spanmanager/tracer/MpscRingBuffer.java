@@ -0,0 +1,104 @@
+/**
+ * Copyright 2017 The OpenTracing Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.opentracing.contrib.spanmanager.tracer;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Bounded, lock-free ring buffer for multiple producers and a single consumer.
+ * <p>
+ * Producers claim a position with a compare-and-set on the tail and publish their element with an ordered store;
+ * {@link #offer(Object)} fails instead of waiting when the buffer is full.
+ * The consumer clears every element it {@link #poll() polls} before it advances the head,
+ * so producers can reuse the position.
+ *
+ * @param <E> The type of the buffered elements.
+ */
+final class MpscRingBuffer<E> {
+
+    private final AtomicReferenceArray<E> elements;
+    private final int mask;
+    private final AtomicLong tail = new AtomicLong();
+    private volatile long head = 0L; // Only written by the consumer.
+
+    /**
+     * @param capacity The minimum capacity, rounded up to a power of two.
+     */
+    MpscRingBuffer(int capacity) {
+        if (capacity < 1 || capacity > 1 << 30) {
+            throw new IllegalArgumentException("Capacity must be between 1 and 2^30: " + capacity + ".");
+        }
+        int size = 1;
+        while (size < capacity) size <<= 1;
+        this.elements = new AtomicReferenceArray<E>(size);
+        this.mask = size - 1;
+    }
+
+    /**
+     * Adds an element unless the buffer is full; may be called by any thread.
+     *
+     * @param element The element to add.
+     * @return Whether the element was added.
+     */
+    boolean offer(E element) {
+        if (element == null) throw new NullPointerException("Element is <null>.");
+        long position;
+        do {
+            position = tail.get();
+            if (position - head > mask) return false;
+        } while (!tail.compareAndSet(position, position + 1));
+        elements.lazySet((int) position & mask, element);
+        return true;
+    }
+
+    /**
+     * Removes the oldest element; may only be called by the single consumer thread.
+     * <p>
+     * An element is only returned once its producer has published it;
+     * until then, the buffer appears empty to the consumer.
+     *
+     * @return The oldest element, or <code>null</code> if none is available.
+     */
+    E poll() {
+        long position = head;
+        int index = (int) position & mask;
+        E element = elements.get(index);
+        if (element != null) {
+            elements.lazySet(index, null);
+            head = position + 1;
+        }
+        return element;
+    }
+
+    /**
+     * Whether all added elements were polled; may only be called by the single consumer thread.
+     * <p>
+     * Positions that were claimed by producers but not yet published count as elements,
+     * so the buffer is not empty while an {@link #offer(Object)} is in progress.
+     *
+     * @return Whether the buffer is empty.
+     */
+    boolean isEmpty() {
+        return tail.get() == head;
+    }
+
+    /**
+     * @return The number of elements that were ever added to this buffer.
+     */
+    long offered() {
+        return tail.get();
+    }
+
+}
@@ -0,0 +1,35 @@
+/**
+ * Copyright 2017 The OpenTracing Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.opentracing.contrib.spanmanager.tracer;
+
+import io.opentracing.SpanContext;
+
+/**
+ * Tells whether a span will be recorded by the tracer that created it,
+ * which the opentracing API does not expose itself.
+ * <p>
+ * Implementations typically inspect the tracer-specific {@link SpanContext} implementation.
+ *
+ * @see ManagedSpanTracer#ManagedSpanTracer(io.opentracing.Tracer,
+ * io.opentracing.contrib.spanmanager.SpanManager, boolean, SamplingInspector)
+ */
+public interface SamplingInspector {
+
+    /**
+     * @param context The context of a newly started span.
+     * @return <code>false</code> if the span is not sampled and its tags and logs will be dropped by the tracer.
+     */
+    boolean isSampled(SpanContext context);
+
+}
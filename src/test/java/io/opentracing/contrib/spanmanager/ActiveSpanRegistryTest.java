@@ -0,0 +1,71 @@
+/**
+ * Copyright 2017 The OpenTracing Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.opentracing.contrib.spanmanager;
+
+import io.opentracing.contrib.spanmanager.SpanManager.ManagedSpan;
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+import static org.mockito.Mockito.mock;
+
+public class ActiveSpanRegistryTest {
+
+    ActiveSpanRegistry subject = new ActiveSpanRegistry(1); // all threads share a single stripe.
+
+    @Test
+    public void testSlotWithoutCurrentSpanIsOmitted() {
+        ActiveSpanRegistry.Slot slot = subject.acquire();
+        ManagedSpan current = mock(ManagedSpan.class);
+        slot.publish(current);
+        assertThat("snapshot", subject.snapshot(), hasEntry(Thread.currentThread(), current));
+        slot.publish(null);
+        assertThat("snapshot", subject.snapshot().isEmpty(), is(true));
+        assertThat("current", slot.current(), is(nullValue()));
+    }
+
+    @Test
+    public void testSlotOfLiveThreadIsNotReclaimed() {
+        ActiveSpanRegistry.Slot slot = subject.acquire();
+        assertThat("new slot", subject.acquire(), is(not(sameInstance(slot))));
+    }
+
+    @Test
+    public void testSlotOfTerminatedThreadIsReclaimed() throws InterruptedException {
+        final AtomicReference<ActiveSpanRegistry.Slot> terminatedSlot = new AtomicReference<ActiveSpanRegistry.Slot>();
+        final ManagedSpan leaked = mock(ManagedSpan.class);
+        Thread thread = new Thread() {
+            @Override
+            public void run() {
+                ActiveSpanRegistry.Slot slot = subject.acquire();
+                slot.publish(leaked); // still published when the thread terminates.
+                terminatedSlot.set(slot);
+            }
+        };
+        thread.start();
+        thread.join();
+        assertThat("snapshot", subject.snapshot(), not(hasKey(thread)));
+
+        ActiveSpanRegistry.Slot slot = subject.acquire();
+        assertThat("reclaimed slot", slot, is(sameInstance(terminatedSlot.get())));
+        assertThat("current of reclaimed slot", slot.current(), is(nullValue()));
+        ManagedSpan current = mock(ManagedSpan.class);
+        slot.publish(current);
+        assertThat("snapshot", subject.snapshot(), hasEntry(Thread.currentThread(), current));
+        assertThat("snapshot", subject.snapshot().size(), is(1));
+    }
+
+}
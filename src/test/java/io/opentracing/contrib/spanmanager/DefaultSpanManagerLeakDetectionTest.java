@@ -0,0 +1,109 @@
+/**
+ * Copyright 2017 The OpenTracing Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.opentracing.contrib.spanmanager;
+
+import io.opentracing.Span;
+import io.opentracing.contrib.spanmanager.SpanManager.ManagedSpan;
+import org.junit.Test;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.mockito.Mockito.mock;
+
+public class DefaultSpanManagerLeakDetectionTest {
+
+    @Test
+    public void testDeactivatedSpansAreNotReported() {
+        DefaultSpanManager manager = DefaultSpanManager.builder().withLeakDetection(1).build();
+        ManagedSpan managed1 = manager.activate(mock(Span.class));
+        ManagedSpan managed2 = manager.activate(mock(Span.class));
+        managed1.deactivate();
+        managed2.deactivate();
+        manager.clear();
+        assertThat("leaks", manager.getDetectedLeaks(), is(0L));
+    }
+
+    @Test
+    public void testClearReportsActiveSpans() {
+        DefaultSpanManager manager = DefaultSpanManager.builder().withLeakDetection(1).build();
+        manager.activate(mock(Span.class));
+        manager.activate(mock(Span.class)).deactivate();
+        manager.activate(mock(Span.class));
+        manager.clear();
+        assertThat("leaks", manager.getDetectedLeaks(), is(2L));
+
+        manager.clear();
+        assertThat("leaks are reported once", manager.getDetectedLeaks(), is(2L));
+    }
+
+    @Test
+    public void testSamplingInterval() {
+        DefaultSpanManager manager = DefaultSpanManager.builder().withLeakDetection(4).build();
+        for (int i = 0; i < 8; i++) manager.activate(mock(Span.class));
+        manager.clear();
+        assertThat("leaks", manager.getDetectedLeaks(), is(2L));
+    }
+
+    @Test
+    public void testSamplingIntervalPerThread() throws InterruptedException {
+        final DefaultSpanManager manager = DefaultSpanManager.builder().withLeakDetection(2).build();
+        manager.activate(mock(Span.class));
+        Thread thread = new Thread() {
+            @Override
+            public void run() {
+                manager.activate(mock(Span.class)); // the first activation of this thread.
+                manager.clear();
+            }
+        };
+        thread.start();
+        thread.join();
+        manager.clear();
+        assertThat("leaks", manager.getDetectedLeaks(), is(0L));
+    }
+
+    @Test
+    public void testMaxDepthReportsRemovedSpans() {
+        DefaultSpanManager manager = DefaultSpanManager.builder()
+                .withMaxDepth(2, DefaultSpanManager.DepthLimitPolicy.DROP_OLDEST)
+                .withLeakDetection(1)
+                .build();
+        for (int i = 0; i < 3; i++) manager.activate(mock(Span.class));
+        assertThat("leaks", manager.getDetectedLeaks(), is(1L));
+        manager.current().deactivate();
+        manager.current().deactivate();
+        assertThat("leaks", manager.getDetectedLeaks(), is(1L));
+    }
+
+    @Test
+    public void testGarbageCollectedSpansAreReported() throws InterruptedException {
+        final DefaultSpanManager manager = DefaultSpanManager.builder().withLeakDetection(1).build();
+        Thread leakingThread = new Thread() {
+            @Override
+            public void run() {
+                manager.activate(mock(Span.class)); // never deactivated, discarded with the thread.
+            }
+        };
+        leakingThread.start();
+        leakingThread.join();
+        leakingThread = null;
+
+        for (int i = 0; i < 10 && manager.getDetectedLeaks() == 0L; i++) {
+            System.gc();
+            Thread.sleep(10);
+            manager.activate(mock(Span.class)).deactivate(); // polls the collected spans.
+        }
+        assertThat("leaks", manager.getDetectedLeaks(), is(1L));
+    }
+
+}
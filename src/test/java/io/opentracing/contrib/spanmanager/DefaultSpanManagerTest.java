@@ -20,9 +20,12 @@ import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 
+import java.lang.ref.WeakReference;
+import java.util.concurrent.CountDownLatch;
+
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.*;
-import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.*;
 
 public class DefaultSpanManagerTest {
 
@@ -146,6 +149,51 @@ public class DefaultSpanManagerTest {
         assertThat("popped span1", manager.current().getSpan(), is(nullValue()));
     }
 
+    @Test
+    public void testOutOfOrderReleaseBelowNewActivation() {
+        Span span1 = mock(Span.class);
+        Span span2 = mock(Span.class);
+        Span span3 = mock(Span.class);
+        Span span4 = mock(Span.class);
+
+        ManagedSpan managed1 = manager.activate(span1);
+        ManagedSpan managed2 = manager.activate(span2);
+        ManagedSpan managed3 = manager.activate(span3);
+
+        // Span1 -> Span2(X) -> Span3 -> Span4
+        managed2.deactivate();
+        ManagedSpan managed4 = manager.activate(span4);
+        assertThat("pushed span4", manager.current().getSpan(), is(sameInstance(span4)));
+
+        // Span1 -> Span3(X) -> Span4  :  currentSpan stays Span4
+        managed3.deactivate();
+        assertThat("released span3", manager.current().getSpan(), is(sameInstance(span4)));
+
+        managed4.deactivate();
+        assertThat("skipped span2 + span3", manager.current().getSpan(), is(sameInstance(span1)));
+
+        managed1.deactivate();
+        assertThat("popped span1", manager.current().getSpan(), is(nullValue()));
+    }
+
+    @Test
+    public void testReleaseAfterClear() {
+        Span span3 = mock(Span.class);
+
+        ManagedSpan managed1 = manager.activate(mock(Span.class));
+        ManagedSpan managed2 = manager.activate(mock(Span.class));
+        manager.clear();
+        assertThat("cleared stack", manager.current().getSpan(), is(nullValue()));
+
+        ManagedSpan managed3 = manager.activate(span3);
+        managed2.deactivate();
+        managed1.deactivate();
+        assertThat("cleared spans are ignored", manager.current().getSpan(), is(sameInstance(span3)));
+
+        managed3.deactivate();
+        assertThat("popped span3", manager.current().getSpan(), is(nullValue()));
+    }
+
     /**
      * <strong>Note:</strong> This is not a normal use-case!<br>
      * The {@link ManagedSpan} is intended to be created and used in the scope of a try-with-resources block
@@ -195,6 +243,34 @@ public class DefaultSpanManagerTest {
         assertThat("popped span1", manager.current().getSpan(), is(nullValue()));
     }
 
+    @Test
+    public void testSpansDeactivatedByOtherThreadsAreReleased() throws InterruptedException {
+        ManagedSpan managed1 = manager.activate(mock(Span.class));
+        Span span2 = mock(Span.class);
+        final ManagedSpan[] managed2 = {manager.activate(span2)};
+        ManagedSpan managed3 = manager.activate(mock(Span.class));
+        WeakReference<Span> releasedSpan = new WeakReference<Span>(span2);
+        span2 = null;
+
+        Thread otherThread = new Thread() {
+            @Override
+            public void run() {
+                managed2[0].deactivate();
+                managed2[0] = null;
+            }
+        };
+        otherThread.start();
+        otherThread.join();
+        managed3.deactivate(); // must not leave span2 pinned on the stack.
+
+        for (int i = 0; i < 10 && releasedSpan.get() != null; i++) {
+            System.gc();
+            Thread.sleep(10);
+        }
+        assertThat("span2 collected", releasedSpan.get(), is(nullValue()));
+        assertThat("current span", manager.current(), is(sameInstance(managed1)));
+    }
+
     @Test
     public void testExplicitRelease() {
         Span span1 = mock(Span.class);
@@ -221,4 +297,204 @@ public class DefaultSpanManagerTest {
         assertThat("pushed span1", manager.currentSpan(), is(sameInstance(span1)));
     }
 
+    @Test
+    public void testMaxDepthDropOldest() {
+        DefaultSpanManager bounded = DefaultSpanManager.withMaxDepth(3, DefaultSpanManager.DepthLimitPolicy.DROP_OLDEST);
+        Span[] spans = new Span[5];
+        ManagedSpan[] managed = new ManagedSpan[spans.length];
+        for (int i = 0; i < spans.length; i++) managed[i] = bounded.activate(spans[i] = mock(Span.class));
+        assertThat("limit hits", bounded.getDepthLimitHits(), is(2L));
+
+        managed[4].deactivate();
+        assertThat("popped span5", bounded.current().getSpan(), is(sameInstance(spans[3])));
+        managed[3].deactivate();
+        assertThat("popped span4", bounded.current().getSpan(), is(sameInstance(spans[2])));
+        managed[2].deactivate();
+        assertThat("dropped span1 and span2", bounded.current().getSpan(), is(nullValue()));
+
+        managed[0].deactivate(); // no effect
+        assertThat("empty stack", bounded.current().getSpan(), is(nullValue()));
+    }
+
+    @Test
+    public void testMaxDepthCollapse() {
+        DefaultSpanManager bounded = DefaultSpanManager.withMaxDepth(4, DefaultSpanManager.DepthLimitPolicy.COLLAPSE);
+        Span[] spans = new Span[5];
+        ManagedSpan[] managed = new ManagedSpan[spans.length];
+        for (int i = 0; i < spans.length; i++) managed[i] = bounded.activate(spans[i] = mock(Span.class));
+        assertThat("limit hits", bounded.getDepthLimitHits(), is(1L));
+
+        managed[4].deactivate();
+        assertThat("popped span5", bounded.current().getSpan(), is(sameInstance(spans[3])));
+        managed[3].deactivate();
+        assertThat("collapsed span2 and span3", bounded.current().getSpan(), is(sameInstance(spans[0])));
+        managed[2].deactivate(); // no effect
+        assertThat("kept root", bounded.current().getSpan(), is(sameInstance(spans[0])));
+        managed[0].deactivate();
+        assertThat("empty stack", bounded.current().getSpan(), is(nullValue()));
+    }
+
+    @Test
+    public void testMaxDepthAfterOutOfOrderRelease() {
+        DefaultSpanManager bounded = DefaultSpanManager.withMaxDepth(3, DefaultSpanManager.DepthLimitPolicy.DROP_OLDEST);
+        Span span1 = mock(Span.class);
+        ManagedSpan managed1 = bounded.activate(span1);
+        ManagedSpan managed2 = bounded.activate(mock(Span.class));
+        bounded.activate(mock(Span.class));
+        managed2.deactivate(); // out-of-order: the actual depth is 2 now.
+
+        bounded.activate(mock(Span.class));
+        assertThat("limit hits", bounded.getDepthLimitHits(), is(0L));
+        Span span5 = mock(Span.class);
+        bounded.activate(span5);
+        assertThat("limit hits", bounded.getDepthLimitHits(), is(1L));
+        managed1.deactivate(); // dropped; no effect
+        assertThat("current span", bounded.current().getSpan(), is(sameInstance(span5)));
+        bounded.clear();
+    }
+
+    @Test
+    public void testMaxDepthOfOne() {
+        DefaultSpanManager bounded = DefaultSpanManager.withMaxDepth(1, DefaultSpanManager.DepthLimitPolicy.COLLAPSE);
+        bounded.activate(mock(Span.class));
+        Span span2 = mock(Span.class);
+        ManagedSpan managed2 = bounded.activate(span2);
+        assertThat("replaced span1", bounded.current().getSpan(), is(sameInstance(span2)));
+        managed2.deactivate();
+        assertThat("empty stack", bounded.current().getSpan(), is(nullValue()));
+    }
+
+    @Test
+    public void testListenerIsNotified() {
+        SpanManagerListener listener = mock(SpanManagerListener.class);
+        DefaultSpanManager listened = DefaultSpanManager.builder().withListener(listener).build();
+        ManagedSpan managed1 = listened.activate(mock(Span.class));
+        ManagedSpan managed2 = listened.activate(mock(Span.class));
+        verify(listener).activated(managed1);
+        verify(listener).activated(managed2);
+
+        managed2.deactivate();
+        verify(listener).deactivated(managed2, managed1);
+        managed2.deactivate();
+        verify(listener).deactivatedRepeatedly(managed2);
+        managed1.deactivate();
+        verify(listener).deactivated(managed1, NoManagedSpan.INSTANCE);
+        verifyNoMoreInteractions(listener);
+    }
+
+    @Test(expected = NullPointerException.class)
+    public void testNullListener() {
+        DefaultSpanManager.builder().withListener(null);
+    }
+
+    @Test
+    public void testActiveSpanRegistry() throws InterruptedException {
+        final DefaultSpanManager registered = DefaultSpanManager.builder().withActiveSpanRegistry().build();
+        Span span1 = mock(Span.class);
+        final Span span2 = mock(Span.class);
+        ManagedSpan managed1 = registered.activate(span1);
+        assertThat("active spans", registered.getActiveSpans(), hasEntry(Thread.currentThread(), span1));
+
+        final CountDownLatch activated = new CountDownLatch(1);
+        final CountDownLatch done = new CountDownLatch(1);
+        Thread thread = new Thread() {
+            @Override
+            public void run() {
+                ManagedSpan managed2 = registered.activate(span2);
+                activated.countDown();
+                try {
+                    done.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                managed2.deactivate();
+            }
+        };
+        thread.start();
+        activated.await();
+        assertThat("active spans", registered.getActiveSpans(), hasEntry(thread, span2));
+        assertThat("active spans", registered.getActiveSpans().size(), is(2));
+        done.countDown();
+        thread.join();
+
+        ManagedSpan managed3 = registered.activate(mock(Span.class));
+        managed3.deactivate();
+        assertThat("parent restored", registered.getActiveSpans(), hasEntry(Thread.currentThread(), span1));
+        assertThat("active spans", registered.getActiveSpans().size(), is(1));
+        managed1.deactivate();
+        assertThat("no active spans", registered.getActiveSpans().isEmpty(), is(true));
+        assertThat("current span", registered.current().getSpan(), is(nullValue()));
+    }
+
+    @Test
+    public void testActiveSpansOmitTerminatedThreads() throws InterruptedException {
+        final DefaultSpanManager registered = DefaultSpanManager.builder().withActiveSpanRegistry().build();
+        Thread thread = new Thread() {
+            @Override
+            public void run() {
+                registered.activate(mock(Span.class)); // never deactivated.
+            }
+        };
+        thread.start();
+        thread.join();
+        assertThat("no active spans", registered.getActiveSpans().isEmpty(), is(true));
+    }
+
+    @Test
+    public void testActiveSpansWithoutRegistry() {
+        DefaultSpanManager unregistered = DefaultSpanManager.builder().build();
+        unregistered.activate(mock(Span.class));
+        assertThat("no registry", unregistered.getActiveSpans().isEmpty(), is(true));
+        unregistered.clear();
+    }
+
+    @Test
+    public void testActivateAutoReleasing() {
+        DefaultSpanManager defaultManager = (DefaultSpanManager) manager;
+        Span span1 = mock(Span.class);
+        ManagedSpan managed1 = manager.activate(span1);
+        Span span2 = mock(Span.class);
+        Span autoReleasing = defaultManager.activateAutoReleasing(span2);
+        assertThat("managed span", manager.current(), is(sameInstance((ManagedSpan) autoReleasing)));
+        assertThat("current span", manager.current().getSpan(), is(sameInstance(span2)));
+
+        assertThat("fluent", autoReleasing.setTag("key", "value"), is(sameInstance(autoReleasing)));
+        verify(span2).setTag("key", "value");
+        autoReleasing.finish();
+        verify(span2).finish();
+        assertThat("parent restored", manager.current(), is(sameInstance(managed1)));
+        managed1.deactivate();
+    }
+
+    @Test
+    public void testClosingAutoReleasingManagedSpanFinishesOnce() {
+        Span span = mock(Span.class);
+        Span autoReleasing = ((DefaultSpanManager) manager).activateAutoReleasing(span);
+
+        manager.current().close();
+        verify(span).close();
+        assertThat("current span", manager.current().getSpan(), is(nullValue()));
+
+        ((ManagedSpan) autoReleasing).close();
+        autoReleasing.finish();
+        autoReleasing.finish(42L);
+        verify(span, times(1)).close();
+        verify(span, never()).finish();
+        verify(span, never()).finish(anyLong());
+    }
+
+    @Test
+    public void testDeactivatingAutoReleasingSpanDoesNotFinish() {
+        Span span = mock(Span.class);
+        Span autoReleasing = ((DefaultSpanManager) manager).activateAutoReleasing(span);
+
+        manager.current().deactivate();
+        assertThat("current span", manager.current().getSpan(), is(nullValue()));
+        verifyZeroInteractions(span);
+
+        autoReleasing.finish();
+        autoReleasing.finish();
+        verify(span, times(1)).finish();
+    }
+
 }
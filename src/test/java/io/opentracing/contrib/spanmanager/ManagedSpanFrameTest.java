@@ -0,0 +1,66 @@
+/**
+ * Copyright 2017 The OpenTracing Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.opentracing.contrib.spanmanager;
+
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+public class ManagedSpanFrameTest {
+
+    /**
+     * The tests run against the multi-release jar on Java 9+ as well (see the <code>java9</code> profile).
+     */
+    static boolean multiRelease() {
+        return Boolean.getBoolean("spanmanager.test.multiRelease");
+    }
+
+    static class Frame extends ManagedSpanFrame {
+        Frame(int initialState) {
+            super(initialState);
+        }
+    }
+
+    @Test
+    public void testImplementation() throws NoSuchFieldException {
+        String stateType = ManagedSpanFrame.class.getDeclaredField("STATE").getType().getName();
+        assertThat("state updater", stateType,
+                is(multiRelease() ? "java.lang.invoke.VarHandle" : AtomicIntegerFieldUpdater.class.getName()));
+    }
+
+    @Test
+    public void testStateBits() {
+        Frame frame = new Frame(0);
+        assertThat("deactivated", frame.isDeactivated(), is(false));
+        assertThat("set bit", frame.setStateBit(2), is(true));
+        assertThat("set bit again", frame.setStateBit(2), is(false));
+        assertThat("set deactivated", frame.setStateBit(ManagedSpanFrame.DEACTIVATED), is(true));
+        assertThat("deactivated", frame.isDeactivated(), is(true));
+        assertThat("state", frame.state(), is(3));
+    }
+
+    @Test
+    public void testCompareAndSetState() {
+        Frame frame = new Frame(2);
+        assertThat("unexpected state", frame.compareAndSetState(4, 5), is(false));
+        assertThat("expected state", frame.compareAndSetState(2, 3), is(true));
+        assertThat("state", frame.state(), is(3));
+        frame.setState(4);
+        assertThat("state", frame.state(), is(4));
+    }
+
+}
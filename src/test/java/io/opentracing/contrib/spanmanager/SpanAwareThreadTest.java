@@ -0,0 +1,138 @@
+/**
+ * Copyright 2017 The OpenTracing Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.opentracing.contrib.spanmanager;
+
+import io.opentracing.Span;
+import io.opentracing.contrib.spanmanager.SpanManager.ManagedSpan;
+import io.opentracing.contrib.spanmanager.concurrent.SpanAwareThreadFactory;
+import io.opentracing.contrib.spanmanager.concurrent.SpanPropagatingExecutorService;
+import org.junit.Test;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+import static org.mockito.Mockito.mock;
+
+public class SpanAwareThreadTest {
+
+    final SpanManager manager = DefaultSpanManager.getInstance();
+
+    /**
+     * Runs the runnable in a new span-aware thread, rethrowing any assertion errors.
+     */
+    void runInSpanAwareThread(final Runnable runnable) throws InterruptedException {
+        final AtomicReference<Throwable> error = new AtomicReference<Throwable>();
+        Thread thread = new SpanAwareThread(new Runnable() {
+            public void run() {
+                try {
+                    runnable.run();
+                } catch (Throwable t) {
+                    error.set(t);
+                }
+            }
+        });
+        thread.start();
+        thread.join();
+        if (error.get() instanceof AssertionError) throw (AssertionError) error.get();
+        if (error.get() != null) throw new IllegalStateException(error.get().getMessage(), error.get());
+    }
+
+    @Test
+    public void testStackInThreadField() throws InterruptedException {
+        runInSpanAwareThread(new Runnable() {
+            public void run() {
+                SpanAwareThread thread = (SpanAwareThread) Thread.currentThread();
+                Span span1 = mock(Span.class);
+                Span span2 = mock(Span.class);
+
+                assertThat("empty stack", manager.current().getSpan(), is(nullValue()));
+
+                ManagedSpan managed1 = manager.activate(span1);
+                assertThat("claimed field", thread.spanManager, is(sameInstance(manager)));
+                assertThat("span1 in field", thread.managedSpan, is(sameInstance(managed1)));
+
+                ManagedSpan managed2 = manager.activate(span2);
+                assertThat("span2 in field", thread.managedSpan, is(sameInstance(managed2)));
+                assertThat("pushed span2", manager.current().getSpan(), is(sameInstance(span2)));
+
+                managed2.deactivate();
+                assertThat("popped span2", manager.current().getSpan(), is(sameInstance(span1)));
+
+                managed1.deactivate();
+                assertThat("popped span1", manager.current().getSpan(), is(nullValue()));
+                assertThat("empty field", thread.managedSpan, is(nullValue()));
+            }
+        });
+    }
+
+    @Test
+    public void testClear() throws InterruptedException {
+        runInSpanAwareThread(new Runnable() {
+            public void run() {
+                manager.activate(mock(Span.class));
+                manager.activate(mock(Span.class));
+                manager.clear();
+                assertThat("cleared stack", manager.current().getSpan(), is(nullValue()));
+                assertThat("empty field", ((SpanAwareThread) Thread.currentThread()).managedSpan, is(nullValue()));
+            }
+        });
+    }
+
+    @Test
+    public void testOtherSpanManagerUsesThreadLocal() throws InterruptedException {
+        runInSpanAwareThread(new Runnable() {
+            public void run() {
+                SpanManager other = PooledSpanManager.getInstance();
+                Span span1 = mock(Span.class);
+                Span span2 = mock(Span.class);
+
+                ManagedSpan managed1 = manager.activate(span1);
+                ManagedSpan managed2 = other.activate(span2);
+                assertThat("default span manager", manager.current().getSpan(), is(sameInstance(span1)));
+                assertThat("other span manager", other.current().getSpan(), is(sameInstance(span2)));
+
+                managed2.deactivate();
+                managed1.deactivate();
+            }
+        });
+    }
+
+    @Test
+    public void testPropagationIntoSpanAwareThreadpool() throws Exception {
+        ExecutorService threadpool = Executors.newSingleThreadExecutor(new SpanAwareThreadFactory());
+        try {
+            ExecutorService executor = new SpanPropagatingExecutorService(threadpool, manager);
+            Span span = mock(Span.class);
+            ManagedSpan managedSpan = manager.activate(span);
+            try {
+                Span propagated = executor.submit(new Callable<Span>() {
+                    public Span call() {
+                        assertThat(Thread.currentThread(), is(instanceOf(SpanAwareThread.class)));
+                        return manager.current().getSpan();
+                    }
+                }).get();
+                assertThat("propagated span", propagated, is(sameInstance(span)));
+            } finally {
+                managedSpan.deactivate();
+            }
+        } finally {
+            threadpool.shutdown();
+        }
+    }
+
+}
@@ -0,0 +1,119 @@
+/**
+ * Copyright 2017 The OpenTracing Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.opentracing.contrib.spanmanager;
+
+import io.opentracing.Span;
+import io.opentracing.contrib.spanmanager.SpanManager.ManagedSpan;
+import io.opentracing.contrib.spanmanager.concurrent.SpanPropagatingExecutorService;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.is;
+import static org.mockito.Mockito.mock;
+
+public class SpanManagerMetricsTest {
+
+    SpanManagerMetrics metrics;
+    DefaultSpanManager manager;
+
+    @Before
+    public void setUp() {
+        metrics = new SpanManagerMetrics();
+        manager = DefaultSpanManager.builder().withMetrics(metrics).build();
+    }
+
+    @Test
+    public void testActivationDepths() {
+        for (int i = 0; i < 5; i++) manager.activate(mock(Span.class));
+        manager.clear();
+        manager.activate(mock(Span.class)).deactivate();
+
+        assertThat("activations", metrics.getActivations(), is(6L));
+        assertThat("depths", metrics.getDepthHistogram(), equalTo(new long[]{2L, 1L, 2L, 1L, 0L, 0L, 0L, 0L}));
+    }
+
+    @Test
+    public void testDeactivations() {
+        ManagedSpan managed1 = manager.activate(mock(Span.class));
+        ManagedSpan managed2 = manager.activate(mock(Span.class));
+        managed1.deactivate();
+        managed1.deactivate();
+        managed2.deactivate();
+
+        assertThat("out of order", metrics.getOutOfOrderDeactivations(), is(1L));
+        assertThat("repeated", metrics.getRepeatedDeactivations(), is(1L));
+        assertThat("unwinds", metrics.getUnwinds(), is(0L));
+    }
+
+    @Test
+    public void testUnwindsFromOtherThreads() throws InterruptedException {
+        manager.activate(mock(Span.class));
+        final ManagedSpan managed2 = manager.activate(mock(Span.class));
+        final ManagedSpan managed3 = manager.activate(mock(Span.class));
+        Thread otherThread = new Thread() {
+            @Override
+            public void run() {
+                managed3.deactivate();
+                managed2.deactivate();
+            }
+        };
+        otherThread.start();
+        otherThread.join();
+        manager.current();
+
+        assertThat("unwinds", metrics.getUnwinds(), is(1L));
+        assertThat("unwound spans", metrics.getUnwoundSpans(), is(2L));
+        manager.clear();
+    }
+
+    @Test
+    public void testPropagatedTasks() throws InterruptedException {
+        ExecutorService executor = new SpanPropagatingExecutorService(mock(ExecutorService.class), manager, metrics);
+        executor.execute(mock(Runnable.class));
+        ManagedSpan managedSpan = manager.activate(mock(Span.class));
+        try {
+            executor.submit(mock(Runnable.class));
+            executor.invokeAll(Arrays.<Callable<Object>>asList(mock(Callable.class), mock(Callable.class)));
+        } finally {
+            managedSpan.deactivate();
+        }
+
+        assertThat("with span", metrics.getTasksWithSpan(), is(3L));
+        assertThat("without span", metrics.getTasksWithoutSpan(), is(1L));
+    }
+
+    @Test
+    public void testConcurrentCounting() throws InterruptedException {
+        Thread[] threads = new Thread[8];
+        for (int i = 0; i < threads.length; i++) {
+            threads[i] = new Thread() {
+                @Override
+                public void run() {
+                    for (int j = 0; j < 10000; j++) metrics.propagated(1, true);
+                }
+            };
+            threads[i].start();
+        }
+        for (Thread thread : threads) thread.join();
+
+        assertThat("with span", metrics.getTasksWithSpan(), is(80000L));
+    }
+
+}
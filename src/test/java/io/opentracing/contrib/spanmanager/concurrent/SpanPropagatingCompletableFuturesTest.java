@@ -0,0 +1,140 @@
+/**
+ * Copyright 2017 The OpenTracing Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.opentracing.contrib.spanmanager.concurrent;
+
+import io.opentracing.Span;
+import io.opentracing.contrib.spanmanager.DefaultSpanManager;
+import io.opentracing.contrib.spanmanager.SpanManager;
+import io.opentracing.contrib.spanmanager.SpanManager.ManagedSpan;
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import java.util.Collections;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+import static org.mockito.Mockito.*;
+
+public class SpanPropagatingCompletableFuturesTest {
+
+    static final ExecutorService threadpool = Executors.newCachedThreadPool();
+    static final SpanManager spanManager = DefaultSpanManager.getInstance();
+
+    SpanPropagatingCompletableFutures subject;
+
+    @Before
+    public void setUp() {
+        subject = new SpanPropagatingCompletableFutures(spanManager);
+        spanManager.clear();
+    }
+
+    @After
+    public void tearDown() {
+        spanManager.clear();
+    }
+
+    @AfterClass
+    public static void shutdownThreadpool() {
+        assertThat(threadpool.shutdownNow(), equalTo(Collections.<Runnable>emptyList()));
+    }
+
+    @Test
+    public void testSupplyAsync() throws ExecutionException, InterruptedException {
+        ManagedSpan callerManagedSpan = spanManager.activate(mock(Span.class));
+        try {
+
+            CompletableFuture<Span> future = subject.supplyAsync(new CurrentSpanSupplier(), threadpool);
+            assertThat("Current span in thread", future.get(), is(sameInstance(callerManagedSpan.getSpan())));
+
+        } finally {
+            callerManagedSpan.deactivate();
+        }
+    }
+
+    @Test
+    public void testAsyncPipeline() throws ExecutionException, InterruptedException {
+        Span first = mock(Span.class), second = mock(Span.class);
+        CompletableFuture<String> future;
+
+        ManagedSpan managedSpan = spanManager.activate(first);
+        try {
+            future = subject.supplyAsync(new CurrentSpanSupplier(), threadpool)
+                    .thenApplyAsync(subject.function(new AppendCurrentSpan()), threadpool);
+        } finally {
+            managedSpan.deactivate();
+        }
+        managedSpan = spanManager.activate(second);
+        try {
+            future = future.thenApplyAsync(subject.function(new AppendCurrentSpan()), threadpool);
+        } finally {
+            managedSpan.deactivate();
+        }
+
+        assertThat("Spans of the stages", future.get(), is(first + ", " + first + ", " + second));
+    }
+
+    @Test
+    public void testUntracedFunctionsAreNotWrapped() {
+        Function<Object, String> function = new AppendCurrentSpan();
+        Supplier<Span> supplier = new CurrentSpanSupplier();
+        assertThat(subject.function(function), is(sameInstance(function)));
+        assertThat(subject.supplier(supplier), is(sameInstance(supplier)));
+    }
+
+    @Test
+    public void testSameCurrentSpanIsNotActivatedAgain() {
+        SpanManager mockSpanManager = mock(SpanManager.class);
+        ManagedSpan managedSpan = mock(ManagedSpan.class);
+        Span span = mock(Span.class);
+        when(mockSpanManager.current()).thenReturn(managedSpan);
+        when(managedSpan.getSpan()).thenReturn(span);
+
+        Supplier<String> supplier = new SpanPropagatingCompletableFutures(mockSpanManager).supplier(
+                new Supplier<String>() {
+                    public String get() {
+                        return "inline";
+                    }
+                });
+        assertThat(supplier.get(), is("inline"));
+
+        verify(mockSpanManager, never()).activate(Mockito.any(Span.class));
+    }
+
+    static class CurrentSpanSupplier implements Supplier<Span> {
+        @Override
+        public Span get() {
+            return spanManager.current().getSpan();
+        }
+    }
+
+    /**
+     * Appends the current span to the string value of the previous stage.
+     */
+    static class AppendCurrentSpan implements Function<Object, String> {
+        @Override
+        public String apply(Object previous) {
+            return previous + ", " + spanManager.current().getSpan();
+        }
+    }
+
+}
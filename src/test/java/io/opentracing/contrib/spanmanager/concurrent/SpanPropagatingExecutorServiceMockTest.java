@@ -29,6 +29,7 @@ import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Future;
 
 import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
 import static org.hamcrest.Matchers.is;
 import static org.hamcrest.Matchers.sameInstance;
 import static org.junit.Assert.fail;
@@ -110,6 +111,73 @@ public class SpanPropagatingExecutorServiceMockTest {
         verify(mockExecutorService).invokeAll(anyCollection());
     }
 
+    @Test
+    public void testSubmitAll() {
+        Collection<Callable<Object>> callables = Arrays.<Callable<Object>>asList(mock(Callable.class), mock(Callable.class));
+        Future future = mock(Future.class);
+        when(mockExecutorService.submit(any(Callable.class))).thenReturn(future);
+
+        assertThat(service.submitAll(callables), contains(sameInstance(future), sameInstance(future)));
+
+        verify(mockSpanManager, times(1)).current(); // current span must be obtained once for the batch
+        verify(mockManagedSpan, times(1)).getSpan();
+        verify(mockExecutorService, times(2)).submit(any(Callable.class));
+    }
+
+    @Test
+    public void testSubmitAllWithoutCurrentSpan() {
+        Callable<Object> callable = mock(Callable.class);
+        Future future = mock(Future.class);
+        when(mockManagedSpan.getSpan()).thenReturn(null);
+        when(mockExecutorService.submit(same(callable))).thenReturn(future);
+
+        assertThat(service.submitAll(Arrays.asList(callable)), contains(sameInstance(future)));
+
+        verify(mockSpanManager).current();
+        verify(mockManagedSpan).getSpan();
+        verify(mockExecutorService).submit(same(callable)); // untraced callable is not wrapped
+    }
+
+    @Test
+    public void testExecuteRunnableWithoutCurrentSpan() {
+        Runnable runnable = mock(Runnable.class);
+        when(mockManagedSpan.getSpan()).thenReturn(null);
+
+        service.execute(runnable);
+
+        verify(mockSpanManager).current();
+        verify(mockManagedSpan).getSpan();
+        verify(mockExecutorService).execute(same(runnable)); // untraced runnable is not wrapped
+    }
+
+    @Test
+    public void testSubmitCallableWithoutCurrentSpan() {
+        Callable callable = mock(Callable.class);
+        Future future = mock(Future.class);
+        when(mockManagedSpan.getSpan()).thenReturn(null);
+        when(mockExecutorService.submit(same(callable))).thenReturn(future);
+
+        assertThat(service.submit(callable), is(sameInstance(future)));
+
+        verify(mockSpanManager).current();
+        verify(mockManagedSpan).getSpan();
+        verify(mockExecutorService).submit(same(callable)); // untraced callable is not wrapped
+    }
+
+    @Test
+    public void testInvokeAllWithoutCurrentSpan() throws InterruptedException {
+        Collection<Callable<Object>> callables = Arrays.<Callable<Object>>asList(mock(Callable.class), mock(Callable.class));
+        List<Future<Object>> futures = mock(List.class);
+        when(mockManagedSpan.getSpan()).thenReturn(null);
+        when(mockExecutorService.invokeAll(same(callables))).thenReturn(futures);
+
+        assertThat(service.invokeAll(callables), is(sameInstance(futures)));
+
+        verify(mockSpanManager).current();
+        verify(mockManagedSpan).getSpan();
+        verify(mockExecutorService).invokeAll(same(callables)); // untraced callables are not copied
+    }
+
     @Test
     public void testConstructorWithoutDelegate() {
         try {
@@ -120,6 +120,24 @@ public class SpanPropagatingExecutorServiceTest {
     }
 
 
+    @Test
+    public void testSubmitAll() throws ExecutionException, InterruptedException {
+        Collection<Callable<Span>> callables = Arrays.<Callable<Span>>asList(
+                new CurrentSpanCallable(), new CurrentSpanCallable(), new CurrentSpanCallable());
+        ManagedSpan callerManagedSpan = spanManager.activate(mock(Span.class));
+        try {
+
+            List<Future<Span>> futures = subject.submitAll(callables);
+            assertThat("Futures", futures, hasSize(equalTo(callables.size())));
+            for (Future<Span> threadSpan : futures) {
+                assertThat("Current span in thread", threadSpan.get(), is(sameInstance(callerManagedSpan.getSpan())));
+            }
+
+        } finally {
+            callerManagedSpan.deactivate();
+        }
+    }
+
     @Test
     public void testExecuteRunnableWithoutCurrentSpan() throws ExecutionException, InterruptedException {
         CurrentSpanRunnable runnable = new CurrentSpanRunnable();
@@ -0,0 +1,92 @@
+/**
+ * Copyright 2017 The OpenTracing Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.opentracing.contrib.spanmanager.concurrent;
+
+import io.opentracing.Span;
+import io.opentracing.contrib.spanmanager.DefaultSpanManager;
+import io.opentracing.contrib.spanmanager.SpanManager;
+import io.opentracing.contrib.spanmanager.SpanManager.ManagedSpan;
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+import static org.mockito.Mockito.mock;
+
+public class SpanPropagatingRecursiveActionTest {
+
+    static final ForkJoinPool pool = new ForkJoinPool(4);
+    static final SpanManager spanManager = DefaultSpanManager.getInstance();
+
+    @Before
+    @After
+    public void clearSpanManager() {
+        spanManager.clear();
+    }
+
+    @AfterClass
+    public static void shutdownPool() throws InterruptedException {
+        pool.shutdown();
+        assertThat(pool.awaitTermination(5, TimeUnit.SECONDS), is(true));
+    }
+
+    @Test
+    public void testSplitActionPropagatesSpan() {
+        Set<Span> leafSpans = Collections.newSetFromMap(new ConcurrentHashMap<Span, Boolean>());
+        ManagedSpan callerManagedSpan = spanManager.activate(mock(Span.class));
+        try {
+
+            pool.invoke(new CollectLeafSpans(0, 1024, leafSpans));
+            assertThat("Current span in leaves", leafSpans, contains(sameInstance(callerManagedSpan.getSpan())));
+
+        } finally {
+            callerManagedSpan.deactivate();
+        }
+        assertThat("Current span in caller", spanManager.current().getSpan(), is(nullValue()));
+    }
+
+    /**
+     * Splits a range down to single leaves, collecting the span of every leaf.
+     */
+    static class CollectLeafSpans extends SpanPropagatingRecursiveAction {
+        final int from, to;
+        final Set<Span> leafSpans;
+
+        CollectLeafSpans(int from, int to, Set<Span> leafSpans) {
+            super(spanManager);
+            this.from = from;
+            this.to = to;
+            this.leafSpans = leafSpans;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from == 1) {
+                leafSpans.add(spanManager.current().getSpan());
+            } else {
+                int middle = (from + to) >>> 1;
+                invokeAll(new CollectLeafSpans(from, middle, leafSpans), new CollectLeafSpans(middle, to, leafSpans));
+            }
+        }
+    }
+
+}
@@ -0,0 +1,136 @@
+/**
+ * Copyright 2017 The OpenTracing Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.opentracing.contrib.spanmanager.concurrent;
+
+import io.opentracing.Span;
+import io.opentracing.contrib.spanmanager.DefaultSpanManager;
+import io.opentracing.contrib.spanmanager.SpanManager;
+import io.opentracing.contrib.spanmanager.SpanManager.ManagedSpan;
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+import static org.mockito.Mockito.*;
+
+public class SpanPropagatingRecursiveTaskTest {
+
+    static final ForkJoinPool pool = new ForkJoinPool(4);
+    static final SpanManager spanManager = DefaultSpanManager.getInstance();
+
+    @Before
+    @After
+    public void clearSpanManager() {
+        spanManager.clear();
+    }
+
+    @AfterClass
+    public static void shutdownPool() throws InterruptedException {
+        pool.shutdown();
+        assertThat(pool.awaitTermination(5, TimeUnit.SECONDS), is(true));
+    }
+
+    @Test
+    public void testSplitTaskPropagatesSpan() {
+        Set<Span> leafSpans = Collections.newSetFromMap(new ConcurrentHashMap<Span, Boolean>());
+        ManagedSpan callerManagedSpan = spanManager.activate(mock(Span.class));
+        try {
+
+            int leaves = pool.invoke(new CountLeaves(spanManager, 0, 1024, leafSpans));
+            assertThat("Leaves", leaves, is(1024));
+            assertThat("Current span in leaves", leafSpans, contains(sameInstance(callerManagedSpan.getSpan())));
+
+        } finally {
+            callerManagedSpan.deactivate();
+        }
+    }
+
+    @Test
+    public void testTaskWithoutCurrentSpan() {
+        Set<Span> leafSpans = Collections.newSetFromMap(new ConcurrentHashMap<Span, Boolean>());
+        int leaves = pool.invoke(new CountLeaves(spanManager, 0, 16, leafSpans));
+        assertThat("Leaves", leaves, is(16));
+        assertThat("Current span in leaves", leafSpans, is(empty()));
+    }
+
+    @Test
+    public void testTaskInCreatingThreadSkipsActivation() {
+        SpanManager mockSpanManager = mock(SpanManager.class);
+        ManagedSpan managedSpan = mock(ManagedSpan.class);
+        when(mockSpanManager.current()).thenReturn(managedSpan);
+        when(managedSpan.getSpan()).thenReturn(mock(Span.class));
+
+        CountLeaves task = new CountLeaves(mockSpanManager, 0, 1, new HashSet<Span>());
+        assertThat("Leaves", task.invoke(), is(1)); // invoke() executes the task in the calling thread.
+
+        verify(mockSpanManager, never()).activate(Mockito.any(Span.class));
+    }
+
+    @Test
+    public void testStolenTaskActivatesSpan() {
+        SpanManager mockSpanManager = mock(SpanManager.class);
+        ManagedSpan managedSpan = mock(ManagedSpan.class);
+        Span span = mock(Span.class);
+        when(mockSpanManager.current()).thenReturn(managedSpan);
+        when(managedSpan.getSpan()).thenReturn(span);
+        when(mockSpanManager.activate(span)).thenReturn(managedSpan);
+
+        CountLeaves task = new CountLeaves(mockSpanManager, 0, 1, new HashSet<Span>());
+        assertThat("Leaves", pool.invoke(task), is(1)); // executed by a worker thread.
+
+        verify(mockSpanManager).activate(span);
+        verify(managedSpan).deactivate();
+    }
+
+    /**
+     * Splits a range down to single leaves, collecting the span of every leaf from the span manager.
+     */
+    static class CountLeaves extends SpanPropagatingRecursiveTask<Integer> {
+        final SpanManager spanManager;
+        final int from, to;
+        final Set<Span> leafSpans;
+
+        CountLeaves(SpanManager spanManager, int from, int to, Set<Span> leafSpans) {
+            super(spanManager);
+            this.spanManager = spanManager;
+            this.from = from;
+            this.to = to;
+            this.leafSpans = leafSpans;
+        }
+
+        @Override
+        protected Integer compute() {
+            if (to - from == 1) {
+                Span span = spanManager.current().getSpan();
+                if (span != null) leafSpans.add(span);
+                return 1;
+            }
+            int middle = (from + to) >>> 1;
+            CountLeaves left = new CountLeaves(spanManager, from, middle, leafSpans);
+            left.fork();
+            return new CountLeaves(spanManager, middle, to, leafSpans).compute() + left.join();
+        }
+    }
+
+}
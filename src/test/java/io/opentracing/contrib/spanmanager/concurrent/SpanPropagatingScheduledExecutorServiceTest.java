@@ -0,0 +1,148 @@
+/**
+ * Copyright 2017 The OpenTracing Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.opentracing.contrib.spanmanager.concurrent;
+
+import io.opentracing.Span;
+import io.opentracing.contrib.spanmanager.DefaultSpanManager;
+import io.opentracing.contrib.spanmanager.SpanManager;
+import io.opentracing.contrib.spanmanager.SpanManager.ManagedSpan;
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.*;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.assertNull;
+import static org.mockito.Mockito.mock;
+
+public class SpanPropagatingScheduledExecutorServiceTest {
+
+    static final ScheduledExecutorService scheduler = Executors.newScheduledThreadPool(2);
+    static final SpanManager spanManager = DefaultSpanManager.getInstance();
+
+    SpanPropagatingScheduledExecutorService subject;
+
+    @Before
+    public void setUp() {
+        subject = new SpanPropagatingScheduledExecutorService(scheduler, spanManager);
+        spanManager.clear();
+    }
+
+    @After
+    public void tearDown() {
+        spanManager.clear();
+    }
+
+    @AfterClass
+    public static void shutdownScheduler() {
+        assertThat(scheduler.shutdownNow(), equalTo(Collections.<Runnable>emptyList()));
+    }
+
+    @Test
+    public void testScheduleRunnable() throws ExecutionException, InterruptedException {
+        CurrentSpanRunnable runnable = new CurrentSpanRunnable(1);
+        ManagedSpan callerManagedSpan = spanManager.activate(mock(Span.class));
+        try {
+
+            subject.schedule(runnable, 1, TimeUnit.MILLISECONDS).get(); // schedule and block.
+            assertThat("Current span in thread", runnable.spans, contains(sameInstance(callerManagedSpan.getSpan())));
+
+        } finally {
+            callerManagedSpan.deactivate();
+        }
+    }
+
+    @Test
+    public void testScheduleCallable() throws ExecutionException, InterruptedException {
+        ManagedSpan callerManagedSpan = spanManager.activate(mock(Span.class));
+        try {
+
+            Future<Span> threadSpan = subject.schedule(new CurrentSpanCallable(), 1, TimeUnit.MILLISECONDS);
+            assertThat("Current span in thread", threadSpan.get(), is(sameInstance(callerManagedSpan.getSpan())));
+
+        } finally {
+            callerManagedSpan.deactivate();
+        }
+    }
+
+    @Test
+    public void testScheduleCallableWithoutCurrentSpan() throws ExecutionException, InterruptedException {
+        Future<Span> threadSpan = subject.schedule(new CurrentSpanCallable(), 1, TimeUnit.MILLISECONDS);
+        assertNull("Current span in thread", threadSpan.get());
+    }
+
+    @Test
+    public void testScheduleAtFixedRate() throws InterruptedException {
+        CurrentSpanRunnable runnable = new CurrentSpanRunnable(3);
+        ManagedSpan callerManagedSpan = spanManager.activate(mock(Span.class));
+        Span callerSpan = callerManagedSpan.getSpan();
+        ScheduledFuture<?> future = subject.scheduleAtFixedRate(runnable, 0, 1, TimeUnit.MILLISECONDS);
+        callerManagedSpan.deactivate(); // Later runs must keep the span captured at scheduling time.
+        try {
+
+            assertThat("Runs completed", runnable.runs.await(5, TimeUnit.SECONDS), is(true));
+            assertThat("Current span in every run", runnable.spans.subList(0, 3),
+                    contains(sameInstance(callerSpan), sameInstance(callerSpan), sameInstance(callerSpan)));
+
+        } finally {
+            future.cancel(false);
+        }
+    }
+
+    @Test
+    public void testScheduleWithFixedDelay() throws InterruptedException {
+        CurrentSpanRunnable runnable = new CurrentSpanRunnable(3);
+        ManagedSpan callerManagedSpan = spanManager.activate(mock(Span.class));
+        Span callerSpan = callerManagedSpan.getSpan();
+        ScheduledFuture<?> future = subject.scheduleWithFixedDelay(runnable, 0, 1, TimeUnit.MILLISECONDS);
+        callerManagedSpan.deactivate();
+        try {
+
+            assertThat("Runs completed", runnable.runs.await(5, TimeUnit.SECONDS), is(true));
+            assertThat("Current span in every run", runnable.spans.subList(0, 3),
+                    contains(sameInstance(callerSpan), sameInstance(callerSpan), sameInstance(callerSpan)));
+
+        } finally {
+            future.cancel(false);
+        }
+    }
+
+    static class CurrentSpanRunnable implements Runnable {
+        final List<Span> spans = new CopyOnWriteArrayList<Span>();
+        final CountDownLatch runs;
+
+        CurrentSpanRunnable(int expectedRuns) {
+            runs = new CountDownLatch(expectedRuns);
+        }
+
+        @Override
+        public void run() {
+            spans.add(spanManager.current().getSpan());
+            runs.countDown();
+        }
+    }
+
+    static class CurrentSpanCallable implements Callable<Span> {
+        @Override
+        public Span call() {
+            return spanManager.current().getSpan();
+        }
+    }
+
+}
@@ -0,0 +1,362 @@
+/**
+ * Copyright 2017 The OpenTracing Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.opentracing.contrib.spanmanager.concurrent;
+
+import io.opentracing.Span;
+import io.opentracing.contrib.spanmanager.DefaultSpanManager;
+import io.opentracing.contrib.spanmanager.SpanManager;
+import io.opentracing.contrib.spanmanager.SpanManager.ManagedSpan;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+import static org.mockito.AdditionalAnswers.delegatesTo;
+import static org.mockito.Mockito.*;
+
+public class SpanPropagatingThreadPoolExecutorTest {
+
+    static final SpanManager spanManager = DefaultSpanManager.getInstance();
+
+    SpanPropagatingThreadPoolExecutor subject;
+
+    @Before
+    public void setUp() {
+        spanManager.clear();
+        subject = singleThreadExecutor(spanManager);
+    }
+
+    @After
+    public void tearDown() throws InterruptedException {
+        spanManager.clear();
+        subject.shutdown();
+        assertThat(subject.awaitTermination(5, TimeUnit.SECONDS), is(true));
+    }
+
+    static SpanPropagatingThreadPoolExecutor singleThreadExecutor(SpanManager spanManager) {
+        return new SpanPropagatingThreadPoolExecutor(
+                1, 1, 0, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<Runnable>(), spanManager);
+    }
+
+    @Test
+    public void testSubmitCallable() throws ExecutionException, InterruptedException {
+        ManagedSpan callerManagedSpan = spanManager.activate(mock(Span.class));
+        try {
+
+            Future<Span> threadSpan = subject.submit(new CurrentSpanCallable());
+            assertThat("Current span in thread", threadSpan.get(), is(sameInstance(callerManagedSpan.getSpan())));
+
+        } finally {
+            callerManagedSpan.deactivate();
+        }
+    }
+
+    @Test
+    public void testSpanIsSwitchedBetweenCalls() throws ExecutionException, InterruptedException {
+        List<Future<Span>> threadSpans = new ArrayList<Future<Span>>();
+        Span first = mock(Span.class), second = mock(Span.class);
+
+        ManagedSpan callerManagedSpan = spanManager.activate(first);
+        threadSpans.add(subject.submit(new CurrentSpanCallable()));
+        threadSpans.add(subject.submit(new CurrentSpanCallable()));
+        callerManagedSpan.deactivate();
+        threadSpans.add(subject.submit(new CurrentSpanCallable()));
+        callerManagedSpan = spanManager.activate(second);
+        threadSpans.add(subject.submit(new CurrentSpanCallable()));
+        callerManagedSpan.deactivate();
+
+        assertThat(threadSpans.get(0).get(), is(sameInstance(first)));
+        assertThat(threadSpans.get(1).get(), is(sameInstance(first)));
+        assertNull("Current span of untraced call", threadSpans.get(2).get());
+        assertThat(threadSpans.get(3).get(), is(sameInstance(second)));
+    }
+
+    @Test
+    public void testConsecutiveCallsReuseManagedSpan() throws InterruptedException {
+        SpanManager mockSpanManager = mock(SpanManager.class);
+        ManagedSpan workerManagedSpan = mock(ManagedSpan.class);
+        Span span = mock(Span.class);
+        when(mockSpanManager.current()).thenReturn(workerManagedSpan); // in the caller and the worker thread.
+        when(mockSpanManager.activate(span)).thenReturn(workerManagedSpan);
+        when(workerManagedSpan.getSpan()).thenReturn(span);
+
+        SpanPropagatingThreadPoolExecutor executor = singleThreadExecutor(mockSpanManager);
+        try {
+            final CountDownLatch start = new CountDownLatch(1);
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        start.await(); // Queue the other calls behind this one.
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+            });
+            for (int i = 0; i < 9; i++) executor.execute(mock(Runnable.class));
+            start.countDown();
+
+            verify(workerManagedSpan, timeout(5000)).deactivate(); // once, when the worker becomes idle.
+            verify(mockSpanManager, times(1)).activate(span);
+        } finally {
+            executor.shutdown();
+            assertThat(executor.awaitTermination(5, TimeUnit.SECONDS), is(true));
+        }
+        verify(workerManagedSpan, times(1)).deactivate();
+    }
+
+    /**
+     * Blocks the single worker thread until the returned latch is counted down.
+     */
+    CountDownLatch blockWorker() throws InterruptedException {
+        final CountDownLatch started = new CountDownLatch(1), blocked = new CountDownLatch(1);
+        subject.execute(new Runnable() {
+            @Override
+            public void run() {
+                started.countDown();
+                try {
+                    blocked.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        });
+        assertThat(started.await(5, TimeUnit.SECONDS), is(true));
+        return blocked;
+    }
+
+    @Test
+    public void testShutdownNowReturnsSubmittedCalls() throws InterruptedException {
+        blockWorker();
+        ManagedSpan callerManagedSpan = spanManager.activate(mock(Span.class));
+        Future<Span> queued = subject.submit(new CurrentSpanCallable());
+        callerManagedSpan.deactivate();
+
+        List<Runnable> notExecuted = subject.shutdownNow();
+        assertThat(notExecuted, hasSize(1));
+        assertThat(notExecuted.get(0), is(sameInstance((Object) queued)));
+        assertThat(((Future<?>) notExecuted.get(0)).cancel(true), is(true));
+        assertThat(queued.isCancelled(), is(true));
+    }
+
+    @Test
+    public void testRemoveQueuedCallWithSpan() throws InterruptedException {
+        CountDownLatch blocked = blockWorker();
+        ManagedSpan callerManagedSpan = spanManager.activate(mock(Span.class));
+        Runnable queued = mock(Runnable.class);
+        subject.execute(queued);
+        callerManagedSpan.deactivate();
+
+        assertThat(subject.getQueue().contains(queued), is(true));
+        assertThat(subject.remove(queued), is(true));
+        assertThat(subject.getQueue().contains(queued), is(false));
+        assertThat(subject.getQueue(), is(empty()));
+        blocked.countDown();
+        subject.shutdown();
+        assertThat(subject.awaitTermination(5, TimeUnit.SECONDS), is(true));
+        verify(queued, never()).run();
+    }
+
+    @Test
+    public void testPurgeCancelledCallWithSpan() throws InterruptedException {
+        CountDownLatch blocked = blockWorker();
+        ManagedSpan callerManagedSpan = spanManager.activate(mock(Span.class));
+        Future<Span> cancelled = subject.submit(new CurrentSpanCallable());
+        Future<Span> queued = subject.submit(new CurrentSpanCallable());
+        callerManagedSpan.deactivate();
+
+        cancelled.cancel(false);
+        subject.purge();
+        assertThat(subject.getQueue().contains(cancelled), is(false));
+        assertThat(subject.getQueue().contains(queued), is(true));
+        assertThat(subject.getQueue(), hasSize(1));
+        blocked.countDown();
+    }
+
+    @Test
+    public void testLeakedSpanIsClearedAfterCall() throws ExecutionException, InterruptedException {
+        subject.submit(new Runnable() {
+            @Override
+            public void run() {
+                spanManager.activate(mock(Span.class)); // never deactivated.
+            }
+        }).get();
+        assertNull("Current span of next call", subject.submit(new CurrentSpanCallable()).get());
+    }
+
+    @Test
+    public void testLeakedSpanIsClearedAfterTracedCall() throws ExecutionException, InterruptedException {
+        Runnable leakingCall = new Runnable() {
+            @Override
+            public void run() {
+                spanManager.activate(mock(Span.class)); // never deactivated.
+            }
+        };
+        ManagedSpan callerManagedSpan = spanManager.activate(mock(Span.class));
+        try {
+
+            subject.submit(leakingCall).get();
+            Future<Span> threadSpan = subject.submit(new CurrentSpanCallable());
+            assertThat("Current span of next call", threadSpan.get(), is(sameInstance(callerManagedSpan.getSpan())));
+
+        } finally {
+            callerManagedSpan.deactivate();
+        }
+        assertNull("Current span of untraced call", subject.submit(new CurrentSpanCallable()).get());
+    }
+
+    @Test
+    public void testWorkerSpanDeactivatedByCallDoesNotClear() throws ExecutionException, InterruptedException {
+        SpanManager delegatingSpanManager = mock(SpanManager.class, delegatesTo(spanManager));
+        SpanPropagatingThreadPoolExecutor executor = singleThreadExecutor(delegatingSpanManager);
+        ManagedSpan callerManagedSpan = spanManager.activate(mock(Span.class));
+        try {
+
+            executor.submit(new Runnable() {
+                @Override
+                public void run() {
+                    spanManager.current().deactivate(); // the managed span of the worker.
+                }
+            }).get();
+            Future<Span> threadSpan = executor.submit(new CurrentSpanCallable());
+            assertThat("Current span of next call", threadSpan.get(), is(sameInstance(callerManagedSpan.getSpan())));
+
+        } finally {
+            callerManagedSpan.deactivate();
+            executor.shutdown();
+            assertThat(executor.awaitTermination(5, TimeUnit.SECONDS), is(true));
+        }
+        verify(delegatingSpanManager, never()).clear();
+    }
+
+    @Test
+    public void testWorkerSpanIsReleasedOnShutdown() throws InterruptedException {
+        SpanManager mockSpanManager = mock(SpanManager.class);
+        ManagedSpan workerManagedSpan = mock(ManagedSpan.class);
+        Span span = mock(Span.class);
+        when(mockSpanManager.current()).thenReturn(workerManagedSpan);
+        when(mockSpanManager.activate(span)).thenReturn(workerManagedSpan);
+        when(workerManagedSpan.getSpan()).thenReturn(span);
+
+        SpanPropagatingThreadPoolExecutor executor = singleThreadExecutor(mockSpanManager);
+        final CountDownLatch shutdown = new CountDownLatch(1);
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    shutdown.await(); // The queue is empty and the pool is shut down when this call returns.
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        });
+        executor.shutdown();
+        shutdown.countDown();
+        assertThat(executor.awaitTermination(5, TimeUnit.SECONDS), is(true));
+        verify(workerManagedSpan, times(1)).deactivate();
+    }
+
+    @Test
+    public void testWorkerSpanIsReleasedWhenCallThrows() throws InterruptedException {
+        ManagedSpan callerManagedSpan = spanManager.activate(mock(Span.class));
+        final List<Span> workerSpans = new ArrayList<Span>();
+        final CountDownLatch terminated = new CountDownLatch(1);
+        subject.setThreadFactory(new ThreadFactory() {
+            @Override
+            public Thread newThread(final Runnable worker) {
+                return new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        worker.run();
+                        // Not reached: the worker terminates with the exception of the call.
+                    }
+                }) {
+                    {
+                        setUncaughtExceptionHandler(new UncaughtExceptionHandler() {
+                            @Override
+                            public void uncaughtException(Thread t, Throwable e) {
+                                workerSpans.add(spanManager.current().getSpan());
+                                terminated.countDown();
+                            }
+                        });
+                    }
+                };
+            }
+        });
+        subject.execute(new Runnable() {
+            @Override
+            public void run() {
+                throw new IllegalStateException("Call failed.");
+            }
+        });
+        callerManagedSpan.deactivate();
+        assertThat(terminated.await(5, TimeUnit.SECONDS), is(true));
+        assertThat("Current span of terminated worker", workerSpans, contains((Span) null));
+    }
+
+    @Test
+    public void testConfiguredThreadFactory() {
+        ThreadFactory threadFactory = Executors.defaultThreadFactory();
+        subject.setThreadFactory(threadFactory);
+        assertThat(subject.getThreadFactory(), is(sameInstance(threadFactory)));
+    }
+
+    @Test
+    public void testRejectedCallIsPassedAsSubmitted() {
+        RejectedExecutionHandler handler = mock(RejectedExecutionHandler.class);
+        subject.setRejectedExecutionHandler(handler);
+        assertThat(subject.getRejectedExecutionHandler(), is(sameInstance(handler)));
+        subject.shutdown();
+
+        Runnable call = mock(Runnable.class);
+        ManagedSpan callerManagedSpan = spanManager.activate(mock(Span.class));
+        try {
+            subject.execute(call);
+        } finally {
+            callerManagedSpan.deactivate();
+        }
+        verify(handler).rejectedExecution(call, subject);
+    }
+
+    @Test
+    public void testRejectedCallWithDefaultHandler() {
+        assertThat(subject.getRejectedExecutionHandler(), is(instanceOf(ThreadPoolExecutor.AbortPolicy.class)));
+        subject.shutdown();
+        Runnable call = mock(Runnable.class);
+        ManagedSpan callerManagedSpan = spanManager.activate(mock(Span.class));
+        try {
+            subject.execute(call);
+            fail("Rejected execution expected.");
+        } catch (RejectedExecutionException expected) {
+            assertThat(expected.getMessage(), containsString(call.toString()));
+        } finally {
+            callerManagedSpan.deactivate();
+        }
+    }
+
+    static class CurrentSpanCallable implements Callable<Span> {
+        @Override
+        public Span call() {
+            return spanManager.current().getSpan();
+        }
+    }
+
+}
@@ -0,0 +1,224 @@
+/**
+ * Copyright 2017 The OpenTracing Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.opentracing.contrib.spanmanager.tracer;
+
+import io.opentracing.Span;
+import io.opentracing.Tracer;
+import io.opentracing.Tracer.SpanBuilder;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.*;
+
+public class BufferingTracerTest {
+
+    Tracer delegate;
+    SpanBuilder delegateBuilder;
+    Span delegateSpan;
+    BufferingTracer tracer;
+
+    @Before
+    public void setUp() {
+        delegate = mock(Tracer.class);
+        delegateBuilder = mock(SpanBuilder.class);
+        delegateSpan = mock(Span.class);
+        when(delegate.buildSpan(anyString())).thenReturn(delegateBuilder);
+        when(delegateBuilder.withStartTimestamp(anyLong())).thenReturn(delegateBuilder);
+        when(delegateBuilder.start()).thenReturn(delegateSpan);
+    }
+
+    @After
+    public void tearDown() {
+        if (tracer != null) tracer.close();
+    }
+
+    @Test
+    public void testFinishedSpansAreReportedInBackground() {
+        tracer = new BufferingTracer(delegate, 16);
+        Span span = tracer.buildSpan("span").start();
+        span.setTag("key", "value");
+        verify(delegateSpan).setTag("key", "value");
+
+        span.finish(42L);
+        verify(delegateSpan, timeout(5000)).finish(42L);
+        verify(delegateSpan, never()).finish();
+        assertThat("buffered", tracer.getBufferedSpans(), is(1L));
+    }
+
+    @Test
+    public void testIdleReporterIsWokenUp() throws InterruptedException {
+        tracer = new BufferingTracer(delegate, 16);
+        for (int i = 0; i < 3; i++) {
+            Thread.sleep(50L); // Let the reporter fall asleep.
+            tracer.buildSpan("span").start().finish(42L);
+            verify(delegateSpan, timeout(500).times(i + 1)).finish(42L); // Well before the idle park timeout.
+        }
+    }
+
+    @Test
+    public void testStartAndFinishTimestampsFromOneClock() {
+        tracer = new BufferingTracer(delegate, 16);
+        long before = System.currentTimeMillis() * 1000L;
+        Span span = tracer.buildSpan("span").start();
+        span.finish();
+        long after = System.currentTimeMillis() * 1000L;
+        tracer.close();
+
+        ArgumentCaptor<Long> start = ArgumentCaptor.forClass(Long.class);
+        ArgumentCaptor<Long> finish = ArgumentCaptor.forClass(Long.class);
+        verify(delegateBuilder).withStartTimestamp(start.capture());
+        verify(delegateSpan).finish(finish.capture());
+        assertThat("start", start.getValue(), is(allOf(greaterThanOrEqualTo(before), lessThanOrEqualTo(after))));
+        assertThat("finish", finish.getValue(), is(greaterThanOrEqualTo(start.getValue())));
+        assertThat("duration", finish.getValue() - start.getValue(), is(lessThanOrEqualTo(after - before + 1000L)));
+        assertThat("reported", tracer.getReportedSpans(), is(1L));
+    }
+
+    @Test
+    public void testExplicitStartTimestamp() {
+        tracer = new BufferingTracer(delegate, 16);
+        tracer.buildSpan("span").withStartTimestamp(42L).start();
+        verify(delegateBuilder, times(1)).withStartTimestamp(anyLong());
+        verify(delegateBuilder).withStartTimestamp(42L);
+    }
+
+    @Test
+    public void testSpansAreDroppedWhenTheBufferIsFull() throws InterruptedException {
+        final CountDownLatch reporting = new CountDownLatch(1);
+        final CountDownLatch proceed = new CountDownLatch(1);
+        Span blockingSpan = mock(Span.class);
+        doAnswer(new Answer<Void>() {
+            public Void answer(InvocationOnMock invocation) throws Throwable {
+                reporting.countDown();
+                proceed.await();
+                return null;
+            }
+        }).when(blockingSpan).finish(anyLong());
+        when(delegateBuilder.start()).thenReturn(blockingSpan, delegateSpan);
+
+        tracer = new BufferingTracer(delegate, 2);
+        tracer.buildSpan("blocking").start().finish();
+        assertThat("reporting", reporting.await(5, TimeUnit.SECONDS), is(true));
+        for (int i = 0; i < 3; i++) tracer.buildSpan("span" + i).start().finish();
+        assertThat("dropped", tracer.getDroppedSpans(), is(1L));
+        assertThat("buffered", tracer.getBufferedSpans(), is(3L));
+
+        proceed.countDown();
+        tracer.close();
+        assertThat("reported", tracer.getReportedSpans(), is(3L));
+        verify(delegateSpan, times(2)).finish(anyLong());
+    }
+
+    @Test
+    public void testFinishingTwiceIsIgnored() {
+        tracer = new BufferingTracer(delegate, 16);
+        Span span = tracer.buildSpan("span").start();
+        span.finish();
+        span.close();
+        tracer.close();
+        verify(delegateSpan, times(1)).finish(anyLong());
+    }
+
+    @Test
+    public void testConcurrentFinishIsReportedOnce() throws InterruptedException {
+        tracer = new BufferingTracer(delegate, 16);
+        final Span span = tracer.buildSpan("span").start();
+        final CountDownLatch start = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        for (int t = 0; t < 4; t++) {
+            executor.execute(new Runnable() {
+                public void run() {
+                    try {
+                        start.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    span.finish();
+                }
+            });
+        }
+        start.countDown();
+        executor.shutdown();
+        assertThat("terminated", executor.awaitTermination(5, TimeUnit.SECONDS), is(true));
+        tracer.close();
+        verify(delegateSpan, times(1)).finish(anyLong());
+        assertThat("buffered", tracer.getBufferedSpans(), is(1L));
+    }
+
+    @Test
+    public void testReporterSurvivesErrors() {
+        Span failingSpan = mock(Span.class);
+        doThrow(new Error("Finishing failed.")).when(failingSpan).finish(anyLong());
+        when(delegateBuilder.start()).thenReturn(failingSpan, delegateSpan);
+
+        tracer = new BufferingTracer(delegate, 16);
+        tracer.buildSpan("failing").start().finish(41L);
+        tracer.buildSpan("span").start().finish(42L);
+        verify(delegateSpan, timeout(5000)).finish(42L);
+        tracer.close();
+        assertThat("reported", tracer.getReportedSpans(), is(2L));
+    }
+
+    @Test
+    public void testClosingTwice() {
+        tracer = new BufferingTracer(delegate, 16);
+        tracer.buildSpan("span").start().finish(42L);
+        tracer.close();
+        tracer.close();
+        verify(delegateSpan, times(1)).finish(42L);
+        assertThat("reported", tracer.getReportedSpans(), is(1L));
+    }
+
+    @Test
+    public void testSpansFinishedAfterCloseAreReportedSynchronously() {
+        tracer = new BufferingTracer(delegate, 16);
+        tracer.close();
+        tracer.buildSpan("span").start().finish(42L);
+        verify(delegateSpan).finish(42L);
+    }
+
+    @Test
+    public void testConcurrentProducers() throws InterruptedException {
+        tracer = new BufferingTracer(delegate, 64);
+        final int threads = 4, spans = 10000;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        for (int t = 0; t < threads; t++) {
+            executor.execute(new Runnable() {
+                public void run() {
+                    for (int i = 0; i < spans; i++) tracer.buildSpan("span").start().finish();
+                }
+            });
+        }
+        executor.shutdown();
+        assertThat("terminated", executor.awaitTermination(30, TimeUnit.SECONDS), is(true));
+        tracer.close();
+        assertThat("all spans accounted for", tracer.getReportedSpans() + tracer.getDroppedSpans(),
+                is((long) threads * spans));
+        assertThat("reported", tracer.getReportedSpans(), is(tracer.getBufferedSpans()));
+    }
+
+}
@@ -0,0 +1,186 @@
+/**
+ * Copyright 2017 The OpenTracing Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.opentracing.contrib.spanmanager.tracer;
+
+import io.opentracing.References;
+import io.opentracing.Span;
+import io.opentracing.SpanContext;
+import io.opentracing.Tracer;
+import io.opentracing.Tracer.SpanBuilder;
+import io.opentracing.contrib.spanmanager.DefaultSpanManager;
+import io.opentracing.contrib.spanmanager.SpanManager;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.instanceOf;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.nullValue;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.mockito.Mockito.*;
+
+public class ManagedSpanBuilderTest {
+
+    SpanManager spanManager;
+    SpanBuilder delegateBuilder;
+    Tracer delegateTracer;
+    ManagedSpanTracer tracer;
+    Span parent;
+    SpanContext parentContext;
+
+    @Before
+    public void setUp() {
+        spanManager = DefaultSpanManager.getInstance();
+        spanManager.clear();
+        delegateBuilder = mock(SpanBuilder.class);
+        when(delegateBuilder.addReference(anyString(), Mockito.any(SpanContext.class))).thenReturn(delegateBuilder);
+        when(delegateBuilder.start()).thenReturn(mock(Span.class));
+        delegateTracer = mock(Tracer.class);
+        when(delegateTracer.buildSpan(anyString())).thenReturn(delegateBuilder);
+        tracer = new ManagedSpanTracer(delegateTracer, spanManager);
+        parent = mock(Span.class);
+        parentContext = mock(SpanContext.class);
+        when(parent.context()).thenReturn(parentContext);
+    }
+
+    @After
+    public void tearDown() {
+        spanManager.clear();
+    }
+
+    @Test
+    public void testChildOfCurrentSpan() {
+        spanManager.activate(parent);
+        tracer.buildSpan("child").start();
+        verify(delegateBuilder).addReference(References.CHILD_OF, parentContext);
+    }
+
+    @Test
+    public void testNoParentWithoutCurrentSpan() {
+        Span span = tracer.buildSpan("root").start();
+        verify(delegateBuilder, never()).addReference(anyString(), Mockito.any(SpanContext.class));
+        assertThat("activated", spanManager.current(), is(sameInstance((SpanManager.ManagedSpan) span)));
+        span.finish();
+        assertThat("deactivated", spanManager.current().getSpan(), is(nullValue()));
+    }
+
+    @Test
+    public void testExplicitReferenceReplacesCurrentSpan() {
+        spanManager.activate(parent);
+        SpanContext explicit = mock(SpanContext.class);
+        tracer.buildSpan("child").addReference(References.FOLLOWS_FROM, explicit).start();
+        verify(delegateBuilder).addReference(References.FOLLOWS_FROM, explicit);
+        verify(delegateBuilder, never()).addReference(References.CHILD_OF, parentContext);
+    }
+
+    @Test
+    public void testIgnoreActiveSpan() {
+        spanManager.activate(parent);
+        tracer.buildSpan("root").ignoreActiveSpan().start();
+        verify(delegateBuilder, never()).addReference(anyString(), Mockito.any(SpanContext.class));
+    }
+
+    @Test
+    public void testOtherSpanManagerIsWrapped() {
+        SpanManager otherManager = mock(SpanManager.class);
+        when(otherManager.current()).thenReturn(mock(SpanManager.ManagedSpan.class));
+        SpanManager.ManagedSpan managedSpan = mock(SpanManager.ManagedSpan.class);
+        when(managedSpan.getSpan()).thenReturn(mock(Span.class));
+        when(otherManager.activate(Mockito.any(Span.class))).thenReturn(managedSpan);
+        Span span = new ManagedSpanBuilder(delegateBuilder, otherManager).start();
+        assertThat("wrapped", span, is(instanceOf(AutoReleasingManagedSpan.class)));
+        span.finish();
+        verify(managedSpan).deactivate();
+    }
+
+    @Test
+    public void testRecycledBuilders() {
+        ManagedSpanTracer recycling = new ManagedSpanTracer(delegateTracer, spanManager, true);
+        ManagedSpanBuilder builder = recycling.buildSpan("first");
+        ManagedSpanBuilder concurrent = recycling.buildSpan("concurrent");
+        assertThat("builder in use", concurrent, is(not(sameInstance(builder))));
+        builder.start().finish();
+        concurrent.start().finish();
+        assertThat("recycled", recycling.buildSpan("second"), is(sameInstance(builder)));
+        assertThat("in use again", recycling.buildSpan("third"), is(not(sameInstance(builder))));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testRecycledBuilderUsedAfterStart() {
+        ManagedSpanBuilder builder = new ManagedSpanTracer(delegateTracer, spanManager, true).buildSpan("span");
+        builder.start().finish();
+        builder.withTag("key", "value");
+    }
+
+    @Test
+    public void testBuildersAreNotRecycledByDefault() {
+        ManagedSpanBuilder builder = tracer.buildSpan("first");
+        builder.start().finish();
+        assertThat("new builder", tracer.buildSpan("second"), is(not(sameInstance(builder))));
+    }
+
+    @Test
+    public void testUnsampledSpansDiscardTagsAndLogs() {
+        SamplingInspector inspector = mock(SamplingInspector.class);
+        ManagedSpanTracer sampling = new ManagedSpanTracer(delegateTracer, spanManager, false, inspector);
+        Span delegateSpan = mock(Span.class);
+        when(delegateSpan.context()).thenReturn(parentContext);
+        when(delegateBuilder.start()).thenReturn(delegateSpan);
+
+        Span unsampled = sampling.buildSpan("unsampled").start();
+        assertThat("fluent", unsampled.setTag("key", "value").log("event"), is(sameInstance(unsampled)));
+        assertThat("context", unsampled.context(), is(sameInstance(parentContext)));
+        assertThat("activated", spanManager.current().getSpan(), is(sameInstance(delegateSpan)));
+        verify(delegateSpan, never()).setTag(anyString(), anyString());
+        verify(delegateSpan, never()).log(anyString());
+
+        sampling.buildSpan("child").start().finish();
+        verify(delegateBuilder).addReference(References.CHILD_OF, parentContext);
+        unsampled.finish();
+        verify(delegateSpan, times(2)).finish(); // The child was started from the same delegate builder.
+        assertThat("deactivated", spanManager.current().getSpan(), is(nullValue()));
+    }
+
+    @Test
+    public void testSampledSpansForwardTags() {
+        SamplingInspector inspector = mock(SamplingInspector.class);
+        when(inspector.isSampled(Mockito.any(SpanContext.class))).thenReturn(true);
+        Span delegateSpan = mock(Span.class);
+        when(delegateBuilder.start()).thenReturn(delegateSpan);
+        Span sampled = new ManagedSpanTracer(delegateTracer, spanManager, false, inspector).buildSpan("span").start();
+        sampled.setTag("key", "value");
+        verify(delegateSpan).setTag("key", "value");
+        sampled.finish();
+    }
+
+    @Test
+    public void testUnsampledSpanWithOtherSpanManager() {
+        SpanManager.ManagedSpan managedSpan = mock(SpanManager.ManagedSpan.class);
+        Span delegateSpan = mock(Span.class);
+        when(managedSpan.getSpan()).thenReturn(delegateSpan);
+        SpanManager otherManager = mock(SpanManager.class);
+        when(otherManager.current()).thenReturn(mock(SpanManager.ManagedSpan.class));
+        when(otherManager.activate(Mockito.any(Span.class))).thenReturn(managedSpan);
+        Span unsampled = new ManagedSpanBuilder(delegateBuilder, otherManager, false, mock(SamplingInspector.class)).start();
+        unsampled.setTag("key", "value");
+        verify(delegateSpan, never()).setTag(anyString(), anyString());
+        unsampled.finish();
+        verify(delegateSpan).finish();
+        verify(managedSpan).deactivate();
+    }
+
+}